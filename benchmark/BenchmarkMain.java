@@ -0,0 +1,27 @@
+package ee.coop.delivery.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the delivery benchmarks with the allocation profiler. Arguments are benchmark includes,
+ * e.g. "updateLockers". Fleet sizes are the {@link Fleet} parameters, the stock JMH launcher
+ * (org.openjdk.jmh.Main) overrides them with e.g. -p cabinets=5000.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        if (args.length == 0) {
+            options.include(CabinetServiceBenchmark.class.getSimpleName());
+        }
+        for (String include : args) {
+            options.include(include);
+        }
+        Options built = options.addProfiler(GCProfiler.class).build();
+        new Runner(built).run();
+    }
+}
@@ -0,0 +1,137 @@
+package ee.coop.delivery.benchmark;
+
+import ee.coop.adapter.strongpoint.SpBox;
+import ee.coop.adapter.strongpoint.SpTerminalEvent;
+import ee.coop.delivery.domain.Cabinet;
+import ee.coop.delivery.domain.TimeSlotsPerDay;
+import ee.coop.delivery.dto.CabinetListRow;
+import ee.coop.delivery.dto.LockerDetails;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the CabinetService hot paths against an in-memory fleet. The repositoryCalls
+ * counter divided by the operation count is the number of repository calls per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CabinetServiceBenchmark {
+
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RepositoryCalls {
+        public long repositoryCalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            repositoryCalls = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void loadCabinetList(Fleet fleet) {
+        fleet.cabinetService.getCabinetsForList();
+    }
+
+    private long nextCabinetId(Fleet fleet) {
+        next = next == fleet.cabinets ? 1 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public void updateLockers(Fleet fleet, RepositoryCalls calls) {
+        SpTerminalEvent event = fleet.terminalEvents.get((int) nextCabinetId(fleet) - 1);
+        // every event toggles one locker so each call has a change to write
+        SpBox box = event.getBoxes().get(0);
+        box.setIsDisabled(!box.getIsDisabled());
+        long before = fleet.totalRepositoryCalls();
+        fleet.cabinetService.updateLockers(event);
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+    }
+
+    @Benchmark
+    public void updateLockersUnchanged(Fleet fleet, RepositoryCalls calls) {
+        // the usual case, the terminal repeats its last snapshot
+        SpTerminalEvent event = fleet.terminalEvents.get((int) nextCabinetId(fleet) - 1);
+        long before = fleet.totalRepositoryCalls();
+        fleet.cabinetService.updateLockers(event);
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+    }
+
+    @Benchmark
+    public List<LockerDetails> getInactiveLockers(Fleet fleet, RepositoryCalls calls) {
+        long before = fleet.totalRepositoryCalls();
+        List<LockerDetails> lockers = fleet.cabinetService.getInactiveLockers();
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+        return lockers;
+    }
+
+    @Benchmark
+    public void toCabinetListRow(Fleet fleet, RepositoryCalls calls) {
+        long before = fleet.totalRepositoryCalls();
+        fleet.cabinetService.refreshCabinetListRow(nextCabinetId(fleet));
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+    }
+
+    @Benchmark
+    public List<CabinetListRow> getCabinetsForList(Fleet fleet, RepositoryCalls calls) {
+        long before = fleet.totalRepositoryCalls();
+        List<CabinetListRow> rows = fleet.cabinetService.getCabinetsForList();
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+        return rows;
+    }
+
+    @Benchmark
+    public List<TimeSlotsPerDay> getTimeSlotsForPeriod(Fleet fleet, RepositoryCalls calls) {
+        long before = fleet.totalRepositoryCalls();
+        List<TimeSlotsPerDay> days = fleet.timeSlotCalendar.getTimeSlotsForPeriod(nextCabinetId(fleet), 14);
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+        return days;
+    }
+
+    @Benchmark
+    public List<TimeSlotsPerDay> buildTimeSlotCalendar(Fleet fleet, RepositoryCalls calls) {
+        long cabinetId = nextCabinetId(fleet);
+        long before = fleet.totalRepositoryCalls();
+        fleet.timeSlotCalendar.timeSlotConfigsChanged(cabinetId);
+        List<TimeSlotsPerDay> days = fleet.timeSlotCalendar.getTimeSlotsForPeriod(cabinetId, 14);
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+        return days;
+    }
+
+    @Benchmark
+    public Iterable<Cabinet> getAvailableCabinets(Fleet fleet, RepositoryCalls calls) {
+        long before = fleet.totalRepositoryCalls();
+        Iterable<Cabinet> cabinets = fleet.cabinetService.getAvailableCabinets();
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+        return cabinets;
+    }
+
+    @Benchmark
+    public Iterable<Cabinet> resolveAvailableCabinets(Fleet fleet, RepositoryCalls calls) {
+        long before = fleet.totalRepositoryCalls();
+        fleet.cabinetService.invalidateRouteVersions();
+        Iterable<Cabinet> cabinets = fleet.cabinetService.getAvailableCabinets();
+        calls.repositoryCalls += fleet.totalRepositoryCalls() - before;
+        return cabinets;
+    }
+}
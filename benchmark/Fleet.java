@@ -0,0 +1,222 @@
+package ee.coop.delivery.benchmark;
+
+import ee.coop.ECoop;
+import ee.coop.adapter.strongpoint.SpBox;
+import ee.coop.adapter.strongpoint.SpTerminalEvent;
+import ee.coop.core.domain.Classifier;
+import ee.coop.core.repository.ClassifierRepository;
+import ee.coop.core.repository.UserCabinetRepository;
+import ee.coop.core.service.ClassifierRegistry;
+import ee.coop.delivery.domain.*;
+import ee.coop.delivery.dto.LockerDetails;
+import ee.coop.delivery.repository.*;
+import ee.coop.delivery.service.CabinetListFanOut;
+import ee.coop.delivery.service.CabinetService;
+import ee.coop.delivery.service.CabinetVersions;
+import ee.coop.delivery.service.LockerEventPublisher;
+import ee.coop.delivery.service.LockerLogCounterService;
+import ee.coop.delivery.service.TimeSlotCalendar;
+import ee.coop.delivery.service.TerminalSnapshotService;
+import ee.coop.delivery.service.TimeSlotCapacity;
+import ee.coop.erp.domain.Store;
+import ee.coop.erp.repository.OrderRepository;
+import ee.coop.erp.repository.StoreRepository;
+import ee.coop.utilites.DateTimeUtil;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fleet of cabinets held in memory and the services wired against repository stand-ins over it
+ */
+@State(Scope.Benchmark)
+public class Fleet {
+
+    @Param({"100", "1000"})
+    public int cabinets;
+
+    @Param({"30"})
+    public int lockersPerCabinet;
+
+    @Param({"20"})
+    public int logRowsPerLocker;
+
+    @Param({"6"})
+    public int slotsPerCabinet;
+
+    final ConcurrentHashMap<String, AtomicLong> repositoryCalls = new ConcurrentHashMap<>();
+
+    final List<Cabinet> cabinetList = new ArrayList<>();
+    final Map<Long, List<Locker>> lockersByCabinet = new HashMap<>();
+    final Map<String, Cabinet> cabinetsByExternalId = new HashMap<>();
+    final List<TimeSlotConfig> timeSlotConfigs = new ArrayList<>();
+    final List<SpTerminalEvent> terminalEvents = new ArrayList<>();
+
+    CabinetService cabinetService;
+    TimeSlotCalendar timeSlotCalendar;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Long today = DateTimeUtil.currentDate();
+        Store store = new Store();
+        store.setId(1L);
+        store.setName("Selver");
+        Route route = new Route();
+        route.setId(1L);
+        route.setName("Viimsi");
+        route.setStore(store);
+        RouteVersion routeVersion = new RouteVersion();
+        routeVersion.setId(1L);
+        routeVersion.setRouteId(1L);
+        routeVersion.setValidFrom(today);
+
+        List<RouteVersionCabinets> routeVersionCabinets = new ArrayList<>();
+        List<LockerDetails> inactiveLockers = new ArrayList<>();
+        long lockerId = 1;
+        long configId = 1;
+        for (long cabinetId = 1; cabinetId <= cabinets; cabinetId++) {
+            Cabinet cabinet = new Cabinet();
+            cabinet.setId(cabinetId);
+            cabinet.setName("Cabinet " + cabinetId);
+            cabinet.setExternalId("T" + cabinetId);
+            cabinet.setStatus("CABINET_STATUS_ACTIVE");
+            cabinetList.add(cabinet);
+            cabinetsByExternalId.put(cabinet.getExternalId(), cabinet);
+
+            RouteVersionCabinets versionCabinet = new RouteVersionCabinets();
+            versionCabinet.setId(cabinetId);
+            versionCabinet.setRouteVersionId(1L);
+            versionCabinet.setCabinet(cabinet);
+            routeVersionCabinets.add(versionCabinet);
+
+            List<Locker> lockers = new ArrayList<>();
+            List<SpBox> boxes = new ArrayList<>();
+            for (long index = 1; index <= lockersPerCabinet; index++, lockerId++) {
+                Locker locker = new Locker();
+                locker.setId(lockerId);
+                locker.setCabinetId(cabinetId);
+                locker.setIndex(index);
+                locker.setStatus(ECoop.LOCKER_STATE_ACTIVE);
+                lockers.add(locker);
+
+                SpBox box = new SpBox();
+                box.setBoxIndex(index);
+                box.setIsDisabled(index == 1);
+                boxes.add(box);
+                if (index == 1) {
+                    inactiveLockers.add(new LockerDetails(cabinet.getName(), index, store.getName(), route.getName(),
+                            null, "Inactive", lockerId, (long) logRowsPerLocker));
+                }
+            }
+            lockersByCabinet.put(cabinetId, lockers);
+
+            SpTerminalEvent event = new SpTerminalEvent();
+            event.setTerminalId(cabinet.getExternalId());
+            event.setIsDeleted(false);
+            event.setBoxes(boxes);
+            terminalEvents.add(event);
+
+            for (int slot = 0; slot < slotsPerCabinet; slot++, configId++) {
+                TimeSlotConfig timeSlotConfig = new TimeSlotConfig();
+                timeSlotConfig.setId(configId);
+                timeSlotConfig.setCabinet(cabinet);
+                timeSlotConfig.setStartTime(8L * 3600000 + slot * 7200000L);
+                timeSlotConfig.setEndTime(10L * 3600000 + slot * 7200000L);
+                timeSlotConfig.setDeliveryFee(BigDecimal.valueOf(3));
+                timeSlotConfig.setMaxOrders(20);
+                timeSlotConfig.setRouteVersionId(1L);
+                timeSlotConfigs.add(timeSlotConfig);
+            }
+        }
+
+        List<Classifier> classifiers = new ArrayList<>();
+        String[] keys = {"CABINET_STATUS_ACTIVE", "CABINET_STATUS_INACTIVE", ECoop.LOCKER_STATE_ACTIVE, ECoop.LOCKER_STATE_INACTIVE};
+        for (int i = 0; i < keys.length; i++) {
+            Classifier classifier = new Classifier();
+            classifier.setId((long) i + 1);
+            classifier.setParentId(ECoop.LOCKER_CLASSIFIER_PARENT_ID);
+            classifier.setKey(keys[i]);
+            classifiers.add(classifier);
+        }
+        ClassifierRegistry classifierRegistry = new ClassifierRegistry(stub(ClassifierRepository.class)
+                .answer("findAll", args -> classifiers).create());
+        classifierRegistry.preload();
+
+        CabinetRepository cabinetRepository = stub(CabinetRepository.class)
+                .answer("findAll", args -> cabinetList)
+                .answer("findOneById", args -> cabinetList.get((int) ((Long) args[0] - 1)))
+                .answer("findOneByExternalId", args -> cabinetsByExternalId.get(args[0]))
+                .create();
+        LockerRepository lockerRepository = stub(LockerRepository.class)
+                .answer("findAllByCabinetIdOrderByIndex", args -> lockersByCabinet.get(args[0]))
+                .create();
+        LockerReadRepository lockerReadRepository = stub(LockerReadRepository.class)
+                .answer("findLockerDetailsByStatusNot", args -> inactiveLockers)
+                .create();
+        RouteVersionRepository routeVersionRepository = stub(RouteVersionRepository.class)
+                .answer("findAll", args -> Collections.singletonList(routeVersion))
+                .answer("findOneById", args -> routeVersion)
+                .answer("findAllById", args -> Collections.singletonList(routeVersion))
+                .create();
+        RouteVersionCabinetsRepository routeVersionCabinetsRepository = stub(RouteVersionCabinetsRepository.class)
+                .answer("findAllByRouteVersionId", args -> routeVersionCabinets)
+                .answer("findFirstByCabinetId", args -> routeVersionCabinets.get((int) ((Long) args[0] - 1)))
+                .create();
+        RouteRepository routeRepository = stub(RouteRepository.class)
+                .answer("findAll", args -> Collections.singletonList(route))
+                .answer("findById", args -> Optional.of(route))
+                .create();
+        Map<Long, List<TimeSlotConfig>> configsByCabinet = new HashMap<>();
+        for (TimeSlotConfig timeSlotConfig : timeSlotConfigs) {
+            configsByCabinet.computeIfAbsent(timeSlotConfig.getCabinet().getId(), id -> new ArrayList<>()).add(timeSlotConfig);
+        }
+        TimeSlotConfigRepository timeSlotConfigRepository = stub(TimeSlotConfigRepository.class)
+                .answer("findAllByCabinetIdOrderByStartTime", args -> configsByCabinet.get(args[0]))
+                .create();
+        LockerLogRepository lockerLogRepository = stub(LockerLogRepository.class).create();
+
+        CabinetVersions cabinetVersions = new CabinetVersions(stub(CabinetVersionRepository.class).create());
+        LockerLogCounterService lockerLogCounterService = new LockerLogCounterService(stub(LockerLogCounterRepository.class).create(),
+                lockerLogRepository, stub(LockerLogDailyRepository.class).create(), lockerReadRepository, cabinetVersions, null, 500);
+        CabinetListFanOut cabinetListFanOut = new CabinetListFanOut(1, 10000, true);
+
+        cabinetService = new CabinetService(stub(OrderRepository.class).create(), null, cabinetRepository,
+                stub(CabinetWriteRepository.class).create(), lockerRepository, lockerLogRepository, lockerReadRepository,
+                stub(LockerWriteRepository.class).create(), lockerLogCounterService, timeSlotConfigRepository,
+                stub(UserCabinetRepository.class).create(), stub(DeliveryRepository.class).create(), routeRepository,
+                stub(StoreRepository.class).create(), classifierRegistry, routeVersionCabinetsRepository,
+                routeVersionRepository, stub(CabinetLogRepository.class).create(), cabinetListFanOut,
+                cabinetVersions, new LockerEventPublisher(256, 10000, 1800000, 1),
+                new TerminalSnapshotService(stub(TerminalSnapshotRepository.class).create()));
+
+        TimeSlotConfigReadRepository timeSlotConfigReadRepository = stub(TimeSlotConfigReadRepository.class).create();
+        TimeSlotCapacity timeSlotCapacity = new TimeSlotCapacity(stub(DeliveryReadRepository.class).create(),
+                stub(TimeSlotTakenRepository.class).create(), 600, new String[]{"DELIVERY_STATUS_CANCELLED"});
+        timeSlotCalendar = new TimeSlotCalendar(timeSlotConfigRepository, timeSlotConfigReadRepository,
+                routeVersionRepository, timeSlotCapacity, 14);
+    }
+
+    public long totalRepositoryCalls() {
+        long total = 0;
+        for (AtomicLong count : repositoryCalls.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    private <T> RepositoryStub<T> stub(Class<T> type) {
+        return RepositoryStub.of(type, repositoryCalls);
+    }
+}
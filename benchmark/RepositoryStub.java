@@ -0,0 +1,84 @@
+package ee.coop.delivery.benchmark;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-in for a Spring Data repository interface. Answers are registered per method name,
+ * every other method returns an empty value. Each call is counted per repository method.
+ */
+public class RepositoryStub<T> {
+
+    private final Class<T> type;
+    private final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> calls;
+
+    private RepositoryStub(Class<T> type, ConcurrentHashMap<String, AtomicLong> calls) {
+        this.type = type;
+        this.calls = calls;
+    }
+
+    public static <T> RepositoryStub<T> of(Class<T> type, ConcurrentHashMap<String, AtomicLong> calls) {
+        return new RepositoryStub<>(type, calls);
+    }
+
+    public RepositoryStub<T> answer(String methodName, Function<Object[], Object> answer) {
+        answers.put(methodName, answer);
+        return this;
+    }
+
+    public T create() {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args);
+            }
+            calls.computeIfAbsent(type.getSimpleName() + "." + method.getName(), key -> new AtomicLong()).incrementAndGet();
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            return emptyValue(method, args);
+        }));
+    }
+
+    private Object objectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return type.getSimpleName() + " stub";
+        }
+    }
+
+    private static Object emptyValue(Method method, Object[] args) {
+        Class<?> returnType = method.getReturnType();
+        if (method.getName().startsWith("save") && args != null && args.length == 1) {
+            return args[0];
+        }
+        if (Iterable.class.isAssignableFrom(returnType)) {
+            return new ArrayList<>();
+        }
+        if (returnType == Optional.class) {
+            return Optional.empty();
+        }
+        if (returnType == long.class || returnType == Long.class) {
+            return 0L;
+        }
+        if (returnType == int.class || returnType == Integer.class) {
+            return 0;
+        }
+        if (returnType == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+}
@@ -1,47 +1,129 @@
 package ee.coop.delivery.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import ee.coop.core.domain.Classifier;
-import ee.coop.delivery.domain.Locker;
-import ee.coop.delivery.domain.LockerLog;
+import ee.coop.core.service.ClassifierRegistry;
+import ee.coop.delivery.dto.LockerLogEntry;
 import ee.coop.delivery.dto.LockerLogUpdate;
+import ee.coop.delivery.dto.LockerRow;
+import ee.coop.delivery.dto.LockerStatusUpdate;
+import ee.coop.delivery.dto.LockerStatusUpdateResult;
 import ee.coop.delivery.service.CabinetService;
+import ee.coop.delivery.service.CabinetVersions;
+import ee.coop.delivery.service.LockerEventPublisher;
 import ee.coop.delivery.dto.LockerDetails;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/delivery/lockers/")
 public class LockersController {
     private final CabinetService cabinetService;
+    private final ObjectMapper objectMapper;
+    private final CabinetVersions cabinetVersions;
+    private final ClassifierRegistry classifierRegistry;
+    private final LockerEventPublisher lockerEventPublisher;
 
-    public LockersController(CabinetService cabinetService) {
+    public LockersController(CabinetService cabinetService, ObjectMapper objectMapper, CabinetVersions cabinetVersions,
+                             ClassifierRegistry classifierRegistry, LockerEventPublisher lockerEventPublisher) {
         this.cabinetService = cabinetService;
+        this.objectMapper = objectMapper;
+        this.cabinetVersions = cabinetVersions;
+        this.classifierRegistry = classifierRegistry;
+        this.lockerEventPublisher = lockerEventPublisher;
     }
 
+    // ETags are taken before the data is read, see CabinetVersions
+
     @GetMapping("{id}")
-    public List<Locker> getAllLockersById(@PathVariable("id") Long id) {
-        return cabinetService.getLockers(id);
+    public List<LockerRow> getAllLockersById(@PathVariable("id") Long id, WebRequest request) {
+        if (request.checkNotModified(cabinetVersions.cabinetEtag(id))) {
+            return null;
+        }
+        return cabinetService.getLockerRows(id);
 
     }
 
     @GetMapping("inactive")
-    public List<LockerDetails> getInactive() {
+    public List<LockerDetails> getInactive(WebRequest request) {
+        // the rows carry route, store and status classifier names as well
+        if (request.checkNotModified(cabinetVersions.lockersEtag(classifierRegistry.getVersion()))) {
+            return null;
+        }
         return cabinetService.getInactiveLockers();
     }
 
+    /**
+     * Live locker and cabinet status changes, without filters for the whole fleet. Route and store filters
+     * are resolved to cabinets on subscribe, browsers resume with Last-Event-ID when they reconnect.
+     */
+    @GetMapping(value = "events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam(value = "cabinetId", required = false) Long cabinetId,
+                                @RequestParam(value = "routeId", required = false) Long routeId,
+                                @RequestParam(value = "storeId", required = false) Long storeId,
+                                @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        Set<Long> cabinetIds = null;
+        if (routeId != null || storeId != null) {
+            cabinetIds = cabinetService.getCabinetIds(routeId, storeId);
+        }
+        if (cabinetId != null) {
+            cabinetIds = cabinetIds == null || cabinetIds.contains(cabinetId) ? Collections.singleton(cabinetId) : Collections.emptySet();
+        }
+        return lockerEventPublisher.subscribe(cabinetIds, lastEventId);
+    }
+
     @RequestMapping(value = "{lockerId}/lockerLog", method = RequestMethod.GET)
-    public List<LockerLog> getLogs(@PathVariable("lockerId") Long lockerId) {
-        return cabinetService.getLockerLogById(lockerId);
+    public List<LockerLogEntry> getLogs(@PathVariable("lockerId") Long lockerId) {
+        return cabinetService.getLockerLogEntries(lockerId);
+    }
+
+    @GetMapping("{lockerId}/lockerLog/page")
+    public List<LockerLogEntry> getLogPage(@PathVariable("lockerId") Long lockerId,
+                                           @RequestParam(value = "beforeId", required = false) Long beforeId,
+                                           @RequestParam(value = "from", required = false) Long from,
+                                           @RequestParam(value = "to", required = false) Long to,
+                                           @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return cabinetService.getLockerLogEntries(lockerId, beforeId, from, to, limit);
+    }
+
+    @GetMapping(value = "{lockerId}/lockerLog/stream", produces = "application/x-ndjson")
+    public StreamingResponseBody streamLogs(@PathVariable("lockerId") Long lockerId,
+                                            @RequestParam(value = "from", required = false) Long from,
+                                            @RequestParam(value = "to", required = false) Long to) {
+        return outputStream -> cabinetService.forEachLockerLogEntry(lockerId, from, to, entry -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(entry));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     @RequestMapping(value = "statuses", method = RequestMethod.GET)
-    public List<Classifier> getStatuses() {
+    public List<Classifier> getStatuses(WebRequest request) {
+        if (request.checkNotModified(cabinetVersions.etag("statuses", classifierRegistry.getVersion()))) {
+            return null;
+        }
         return cabinetService.getLockerStatuses();
     }
 
     @PutMapping("{lockerId}")
-    public LockerLog updateStatus(@PathVariable Long lockerId, @RequestBody LockerLogUpdate lockerLog) {
+    public LockerLogEntry updateStatus(@PathVariable Long lockerId, @RequestBody LockerLogUpdate lockerLog) {
         return cabinetService.updateLockerStatus(lockerId, lockerLog);
     }
+
+    @PutMapping
+    public List<LockerStatusUpdateResult> updateStatuses(@RequestBody List<LockerStatusUpdate> updates) {
+        return cabinetService.updateLockerStatuses(updates);
+    }
 }
@@ -0,0 +1,31 @@
+package ee.coop.delivery.controller;
+
+import ee.coop.delivery.domain.TimeSlotsPerDay;
+import ee.coop.delivery.service.TimeSlotCalendar;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/delivery/timeSlots/")
+public class TimeSlotsController {
+    private final TimeSlotCalendar timeSlotCalendar;
+
+    public TimeSlotsController(TimeSlotCalendar timeSlotCalendar) {
+        this.timeSlotCalendar = timeSlotCalendar;
+    }
+
+    @GetMapping("{cabinetId}")
+    public List<TimeSlotsPerDay> getForPeriod(@PathVariable("cabinetId") Long cabinetId,
+                                              @RequestParam(value = "days", defaultValue = "14") int days) {
+        return timeSlotCalendar.getTimeSlotsForPeriod(cabinetId, days);
+    }
+
+    @GetMapping("batch")
+    public Map<Long, List<TimeSlotsPerDay>> getForCabinets(@RequestParam("cabinetIds") List<Long> cabinetIds,
+                                                           @RequestParam(value = "from", required = false) Long from,
+                                                           @RequestParam(value = "to", required = false) Long to) {
+        return timeSlotCalendar.getTimeSlotsForCabinets(cabinetIds, from, to);
+    }
+}
@@ -0,0 +1,35 @@
+package ee.coop.delivery.domain;
+
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Change counter of one cabinet and its lockers, shared by all application instances.
+ * Cabinet id 0 counts changes behind the locker lists that do not belong to one cabinet.
+ */
+@Entity
+@Table(schema = "delivery", name = "cabinet_version")
+public class CabinetVersion {
+
+    @Id
+    private Long cabinetId;
+    private Long version;
+
+    public Long getCabinetId() {
+        return cabinetId;
+    }
+
+    public void setCabinetId(Long cabinetId) {
+        this.cabinetId = cabinetId;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
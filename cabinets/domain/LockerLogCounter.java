@@ -0,0 +1,72 @@
+package ee.coop.delivery.domain;
+
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Running locker log totals per locker, maintained together with every locker log write
+ */
+@Entity
+@Table(schema = "delivery", name = "locker_log_counter")
+public class LockerLogCounter {
+
+    @Id
+    private Long lockerId;
+    private Long totalCount;
+    private Long inactiveCount;
+    private Long maintenanceCount;
+    private Long lastChangeAt;
+
+    public LockerLogCounter() {
+    }
+
+    public LockerLogCounter(Long lockerId, Long totalCount, Long inactiveCount, Long maintenanceCount, Long lastChangeAt) {
+        this.lockerId = lockerId;
+        this.totalCount = totalCount;
+        this.inactiveCount = inactiveCount;
+        this.maintenanceCount = maintenanceCount;
+        this.lastChangeAt = lastChangeAt;
+    }
+
+    public Long getLockerId() {
+        return lockerId;
+    }
+
+    public void setLockerId(Long lockerId) {
+        this.lockerId = lockerId;
+    }
+
+    public Long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(Long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public Long getInactiveCount() {
+        return inactiveCount;
+    }
+
+    public void setInactiveCount(Long inactiveCount) {
+        this.inactiveCount = inactiveCount;
+    }
+
+    public Long getMaintenanceCount() {
+        return maintenanceCount;
+    }
+
+    public void setMaintenanceCount(Long maintenanceCount) {
+        this.maintenanceCount = maintenanceCount;
+    }
+
+    public Long getLastChangeAt() {
+        return lastChangeAt;
+    }
+
+    public void setLastChangeAt(Long lastChangeAt) {
+        this.lastChangeAt = lastChangeAt;
+    }
+}
@@ -0,0 +1,82 @@
+package ee.coop.delivery.domain;
+
+
+import ee.coop.core.domain.SoftDeletableEntity;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Per locker and day summary of locker log rows that are past retention
+ */
+@Entity
+@Table(schema = "delivery", name = "locker_log_daily")
+public class LockerLogDaily extends SoftDeletableEntity {
+
+    private Long lockerId;
+    private Long cabinetId;
+    private Long day;
+    private Long entryCount;
+    private Long inactiveCount;
+    private Long maintenanceCount;
+
+    public LockerLogDaily() {
+    }
+
+    public LockerLogDaily(Long lockerId, Long cabinetId, Long day, Long entryCount, Long inactiveCount, Long maintenanceCount) {
+        this.lockerId = lockerId;
+        this.cabinetId = cabinetId;
+        this.day = day;
+        this.entryCount = entryCount;
+        this.inactiveCount = inactiveCount;
+        this.maintenanceCount = maintenanceCount;
+    }
+
+    public Long getLockerId() {
+        return lockerId;
+    }
+
+    public void setLockerId(Long lockerId) {
+        this.lockerId = lockerId;
+    }
+
+    public Long getCabinetId() {
+        return cabinetId;
+    }
+
+    public void setCabinetId(Long cabinetId) {
+        this.cabinetId = cabinetId;
+    }
+
+    public Long getDay() {
+        return day;
+    }
+
+    public void setDay(Long day) {
+        this.day = day;
+    }
+
+    public Long getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(Long entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public Long getInactiveCount() {
+        return inactiveCount;
+    }
+
+    public void setInactiveCount(Long inactiveCount) {
+        this.inactiveCount = inactiveCount;
+    }
+
+    public Long getMaintenanceCount() {
+        return maintenanceCount;
+    }
+
+    public void setMaintenanceCount(Long maintenanceCount) {
+        this.maintenanceCount = maintenanceCount;
+    }
+}
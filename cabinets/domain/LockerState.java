@@ -0,0 +1,80 @@
+package ee.coop.delivery.domain;
+
+import ee.coop.ECoop;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Locker state keys as stored in locker statuses, locker logs and classifiers.
+ * New states only need a constant here, the category sets are derived from it.
+ */
+public enum LockerState {
+
+    ACTIVE(ECoop.LOCKER_STATE_ACTIVE, Category.ACTIVITY),
+    INACTIVE(ECoop.LOCKER_STATE_INACTIVE, Category.ACTIVITY),
+
+    NEEDS_ATTENTION("LOCKER_STATE_NEEDS_ATTENTION", Category.MAINTENANCE),
+    NEEDS_REPAIRING("LOCKER_STATE_NEEDS_REPAIRING", Category.MAINTENANCE),
+    NEEDS_CLEANING("LOCKER_STATE_NEEDS_CLEANING", Category.MAINTENANCE),
+    IN_CLEANING("LOCKER_STATE_IN_CLEANING", Category.MAINTENANCE),
+    IN_REPAIRING("LOCKER_STATE_IN_REPAIRING", Category.MAINTENANCE),
+
+    PACKAGE_NOT_LOADED(ECoop.LOCKER_STATE_PACKAGE_NOT_LOADED, Category.PACKAGE),
+    PACKAGE_LOADED(ECoop.LOCKER_STATE_PACKAGE_LOADED, Category.PACKAGE),
+    PACKAGE_COLLECTED(ECoop.LOCKER_STATE_PACKAGE_COLLECTED, Category.PACKAGE),
+    EMPTY(ECoop.LOCKER_STATE_EMPTY, Category.PACKAGE),
+    NOT_EMPTY(ECoop.LOCKER_STATE_NOT_EMPTY, Category.PACKAGE);
+
+    public enum Category {
+        ACTIVITY, MAINTENANCE, PACKAGE
+    }
+
+    private static final Map<String, LockerState> BY_KEY = new HashMap<>();
+
+    static {
+        for (LockerState state : values()) {
+            BY_KEY.put(state.key, state);
+        }
+    }
+
+    public static final Set<LockerState> ACTIVITY = inCategory(Category.ACTIVITY);
+    public static final Set<LockerState> MAINTENANCE = inCategory(Category.MAINTENANCE);
+    public static final Set<LockerState> PACKAGE = inCategory(Category.PACKAGE);
+
+    private final String key;
+    private final Category category;
+
+    LockerState(String key, Category category) {
+        this.key = key;
+        this.category = category;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    /**
+     * @return the state for the key or null when the key is not a known locker state
+     */
+    public static LockerState fromKey(String key) {
+        return key != null ? BY_KEY.get(key) : null;
+    }
+
+    private static Set<LockerState> inCategory(Category category) {
+        EnumSet<LockerState> states = EnumSet.noneOf(LockerState.class);
+        for (LockerState state : values()) {
+            if (state.category == category) {
+                states.add(state);
+            }
+        }
+        return Collections.unmodifiableSet(states);
+    }
+}
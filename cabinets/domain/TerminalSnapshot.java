@@ -0,0 +1,52 @@
+package ee.coop.delivery.domain;
+
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Fingerprint of the last terminal event applied to a cabinet, see TerminalSnapshotService
+ */
+@Entity
+@Table(schema = "delivery", name = "terminal_snapshot")
+public class TerminalSnapshot {
+
+    @Id
+    private String terminalId;
+    private Long fingerprint;
+    private Long appliedAt;
+
+    public TerminalSnapshot() {
+    }
+
+    public TerminalSnapshot(String terminalId, Long fingerprint, Long appliedAt) {
+        this.terminalId = terminalId;
+        this.fingerprint = fingerprint;
+        this.appliedAt = appliedAt;
+    }
+
+    public String getTerminalId() {
+        return terminalId;
+    }
+
+    public void setTerminalId(String terminalId) {
+        this.terminalId = terminalId;
+    }
+
+    public Long getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(Long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Long getAppliedAt() {
+        return appliedAt;
+    }
+
+    public void setAppliedAt(Long appliedAt) {
+        this.appliedAt = appliedAt;
+    }
+}
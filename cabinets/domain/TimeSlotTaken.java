@@ -0,0 +1,87 @@
+package ee.coop.delivery.domain;
+
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Capacity taken on one delivery day of a limited time slot, shared by all application instances
+ */
+@Entity
+@IdClass(TimeSlotTaken.Key.class)
+@Table(schema = "delivery", name = "time_slot_taken")
+public class TimeSlotTaken {
+
+    @Id
+    private Long deliveryDate;
+    @Id
+    private Long timeSlotConfigId;
+    private Long taken;
+
+    public TimeSlotTaken() {
+    }
+
+    public TimeSlotTaken(Long deliveryDate, Long timeSlotConfigId, Long taken) {
+        this.deliveryDate = deliveryDate;
+        this.timeSlotConfigId = timeSlotConfigId;
+        this.taken = taken;
+    }
+
+    public Long getDeliveryDate() {
+        return deliveryDate;
+    }
+
+    public void setDeliveryDate(Long deliveryDate) {
+        this.deliveryDate = deliveryDate;
+    }
+
+    public Long getTimeSlotConfigId() {
+        return timeSlotConfigId;
+    }
+
+    public void setTimeSlotConfigId(Long timeSlotConfigId) {
+        this.timeSlotConfigId = timeSlotConfigId;
+    }
+
+    public Long getTaken() {
+        return taken;
+    }
+
+    public void setTaken(Long taken) {
+        this.taken = taken;
+    }
+
+    public static class Key implements Serializable {
+        private Long deliveryDate;
+        private Long timeSlotConfigId;
+
+        public Key() {
+        }
+
+        public Key(Long deliveryDate, Long timeSlotConfigId) {
+            this.deliveryDate = deliveryDate;
+            this.timeSlotConfigId = timeSlotConfigId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(deliveryDate, other.deliveryDate) && Objects.equals(timeSlotConfigId, other.timeSlotConfigId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deliveryDate, timeSlotConfigId);
+        }
+    }
+}
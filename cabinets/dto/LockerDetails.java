@@ -28,6 +28,10 @@ public class LockerDetails {
         this.logCount = logCount;
     }
 
+    public LockerDetails(String cabinetName, Long index, String storeName, String routeName, String comment, String status, Long id, Long logCount) {
+        this(cabinetName, index, storeName, routeName, comment, status, id, Math.toIntExact(logCount));
+    }
+
     public String getCabinetName() {
         return cabinetName;
     }
@@ -0,0 +1,98 @@
+package ee.coop.delivery.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Locker log row without the cabinet and locker entities, for log listings
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LockerLogEntry {
+
+    private Long id;
+    private Long lockerId;
+    private Long cabinetId;
+    private String status;
+    private String statusMaintenance;
+    private String statusTempMode;
+    private String comment;
+    private Long extCreatedAt;
+
+    public LockerLogEntry() {
+    }
+
+    public LockerLogEntry(Long id, Long lockerId, Long cabinetId, String status, String statusMaintenance,
+                          String statusTempMode, String comment, Long extCreatedAt) {
+        this.id = id;
+        this.lockerId = lockerId;
+        this.cabinetId = cabinetId;
+        this.status = status;
+        this.statusMaintenance = statusMaintenance;
+        this.statusTempMode = statusTempMode;
+        this.comment = comment;
+        this.extCreatedAt = extCreatedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getLockerId() {
+        return lockerId;
+    }
+
+    public void setLockerId(Long lockerId) {
+        this.lockerId = lockerId;
+    }
+
+    public Long getCabinetId() {
+        return cabinetId;
+    }
+
+    public void setCabinetId(Long cabinetId) {
+        this.cabinetId = cabinetId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getStatusMaintenance() {
+        return statusMaintenance;
+    }
+
+    public void setStatusMaintenance(String statusMaintenance) {
+        this.statusMaintenance = statusMaintenance;
+    }
+
+    public String getStatusTempMode() {
+        return statusTempMode;
+    }
+
+    public void setStatusTempMode(String statusTempMode) {
+        this.statusTempMode = statusTempMode;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    public Long getExtCreatedAt() {
+        return extCreatedAt;
+    }
+
+    public void setExtCreatedAt(Long extCreatedAt) {
+        this.extCreatedAt = extCreatedAt;
+    }
+}
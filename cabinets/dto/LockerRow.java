@@ -0,0 +1,98 @@
+package ee.coop.delivery.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Locker without entity state, for locker listings
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LockerRow {
+
+    private Long id;
+    private Long cabinetId;
+    private Long index;
+    private String status;
+    private String statusMaintenance;
+    private String statusTempMode;
+    private Long thermoMode;
+    private String comment;
+
+    public LockerRow() {
+    }
+
+    public LockerRow(Long id, Long cabinetId, Long index, String status, String statusMaintenance, String statusTempMode,
+                     Long thermoMode, String comment) {
+        this.id = id;
+        this.cabinetId = cabinetId;
+        this.index = index;
+        this.status = status;
+        this.statusMaintenance = statusMaintenance;
+        this.statusTempMode = statusTempMode;
+        this.thermoMode = thermoMode;
+        this.comment = comment;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCabinetId() {
+        return cabinetId;
+    }
+
+    public void setCabinetId(Long cabinetId) {
+        this.cabinetId = cabinetId;
+    }
+
+    public Long getIndex() {
+        return index;
+    }
+
+    public void setIndex(Long index) {
+        this.index = index;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getStatusMaintenance() {
+        return statusMaintenance;
+    }
+
+    public void setStatusMaintenance(String statusMaintenance) {
+        this.statusMaintenance = statusMaintenance;
+    }
+
+    public String getStatusTempMode() {
+        return statusTempMode;
+    }
+
+    public void setStatusTempMode(String statusTempMode) {
+        this.statusTempMode = statusTempMode;
+    }
+
+    public Long getThermoMode() {
+        return thermoMode;
+    }
+
+    public void setThermoMode(Long thermoMode) {
+        this.thermoMode = thermoMode;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+}
@@ -0,0 +1,93 @@
+package ee.coop.delivery.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Compact change event pushed to dashboards, lockerId is empty for cabinet status changes
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LockerStateEvent {
+
+    public static final String LOCKER_STATUS = "LOCKER_STATUS";
+    public static final String CABINET_STATUS = "CABINET_STATUS";
+    // the requested resume point is no longer buffered, the client has to reload its state
+    public static final String RESET = "RESET";
+
+    private Long sequence;
+    private String type;
+    private Long cabinetId;
+    private Long lockerId;
+    private String status;
+    private Long createdAt;
+
+    public LockerStateEvent() {
+    }
+
+    public LockerStateEvent(String type, Long cabinetId, Long lockerId, String status, Long createdAt) {
+        this.type = type;
+        this.cabinetId = cabinetId;
+        this.lockerId = lockerId;
+        this.status = status;
+        this.createdAt = createdAt;
+    }
+
+    public static LockerStateEvent lockerStatus(Long cabinetId, Long lockerId, String status, Long createdAt) {
+        return new LockerStateEvent(LOCKER_STATUS, cabinetId, lockerId, status, createdAt);
+    }
+
+    public static LockerStateEvent cabinetStatus(Long cabinetId, String status, Long createdAt) {
+        return new LockerStateEvent(CABINET_STATUS, cabinetId, null, status, createdAt);
+    }
+
+    public static LockerStateEvent reset(Long createdAt) {
+        return new LockerStateEvent(RESET, null, null, null, createdAt);
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Long getCabinetId() {
+        return cabinetId;
+    }
+
+    public void setCabinetId(Long cabinetId) {
+        this.cabinetId = cabinetId;
+    }
+
+    public Long getLockerId() {
+        return lockerId;
+    }
+
+    public void setLockerId(Long lockerId) {
+        this.lockerId = lockerId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Long createdAt) {
+        this.createdAt = createdAt;
+    }
+}
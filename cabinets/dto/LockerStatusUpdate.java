@@ -0,0 +1,34 @@
+package ee.coop.delivery.dto;
+
+/**
+ * One item of a bulk locker status update
+ */
+public class LockerStatusUpdate {
+
+    private Long lockerId;
+    private LockerLogUpdate update;
+
+    public LockerStatusUpdate() {
+    }
+
+    public LockerStatusUpdate(Long lockerId, LockerLogUpdate update) {
+        this.lockerId = lockerId;
+        this.update = update;
+    }
+
+    public Long getLockerId() {
+        return lockerId;
+    }
+
+    public void setLockerId(Long lockerId) {
+        this.lockerId = lockerId;
+    }
+
+    public LockerLogUpdate getUpdate() {
+        return update;
+    }
+
+    public void setUpdate(LockerLogUpdate update) {
+        this.update = update;
+    }
+}
@@ -0,0 +1,63 @@
+package ee.coop.delivery.dto;
+
+/**
+ * Outcome of one item of a bulk locker status update, in the order of the request
+ */
+public class LockerStatusUpdateResult {
+
+    private Long lockerId;
+    private boolean updated;
+    private String status;
+    private String error;
+
+    public LockerStatusUpdateResult() {
+    }
+
+    public static LockerStatusUpdateResult updated(Long lockerId, String status) {
+        LockerStatusUpdateResult result = new LockerStatusUpdateResult();
+        result.setLockerId(lockerId);
+        result.setUpdated(true);
+        result.setStatus(status);
+        return result;
+    }
+
+    public static LockerStatusUpdateResult failed(Long lockerId, String error) {
+        LockerStatusUpdateResult result = new LockerStatusUpdateResult();
+        result.setLockerId(lockerId);
+        result.setUpdated(false);
+        result.setError(error);
+        return result;
+    }
+
+    public Long getLockerId() {
+        return lockerId;
+    }
+
+    public void setLockerId(Long lockerId) {
+        this.lockerId = lockerId;
+    }
+
+    public boolean isUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(boolean updated) {
+        this.updated = updated;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
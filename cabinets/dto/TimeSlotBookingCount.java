@@ -0,0 +1,44 @@
+package ee.coop.delivery.dto;
+
+/**
+ * Number of deliveries booked into one time slot config on one delivery date
+ */
+public class TimeSlotBookingCount {
+
+    private Long date;
+    private Long timeSlotConfigId;
+    private Long count;
+
+    public TimeSlotBookingCount() {
+    }
+
+    public TimeSlotBookingCount(Long date, Long timeSlotConfigId, Long count) {
+        this.date = date;
+        this.timeSlotConfigId = timeSlotConfigId;
+        this.count = count;
+    }
+
+    public Long getDate() {
+        return date;
+    }
+
+    public void setDate(Long date) {
+        this.date = date;
+    }
+
+    public Long getTimeSlotConfigId() {
+        return timeSlotConfigId;
+    }
+
+    public void setTimeSlotConfigId(Long timeSlotConfigId) {
+        this.timeSlotConfigId = timeSlotConfigId;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,43 @@
+package ee.coop.delivery.metrics;
+
+import ee.coop.core.service.ClassifierRegistry;
+import ee.coop.core.service.UserProfileCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes hits and misses of the in-memory caches as cache.gets tagged with the cache and the result,
+ * the names Micrometer's own cache binders use.
+ */
+@Component
+public class CacheMetricsBinder implements MeterBinder {
+
+    private final ClassifierRegistry classifierRegistry;
+    private final UserProfileCache userProfileCache;
+
+    public CacheMetricsBinder(ClassifierRegistry classifierRegistry, UserProfileCache userProfileCache) {
+        this.classifierRegistry = classifierRegistry;
+        this.userProfileCache = userProfileCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindGets(registry, "classifiers", classifierRegistry, ClassifierRegistry::getHitCount, ClassifierRegistry::getMissCount);
+        bindGets(registry, "user.profiles", userProfileCache, UserProfileCache::getHitCount, UserProfileCache::getMissCount);
+    }
+
+    private <T> void bindGets(MeterRegistry registry, String cache, T source, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+        FunctionCounter.builder("cache.gets", source, hits)
+                .tag("cache", cache)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", source, misses)
+                .tag("cache", cache)
+                .tag("result", "miss")
+                .register(registry);
+    }
+}
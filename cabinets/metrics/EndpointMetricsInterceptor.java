@@ -0,0 +1,58 @@
+package ee.coop.delivery.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latency and repository call count per controller endpoint, published as
+ * delivery.endpoint.latency and delivery.endpoint.repository.calls tagged with the endpoint.
+ */
+@Component
+public class EndpointMetricsInterceptor implements HandlerInterceptor {
+
+    private static final String STARTED_AT = EndpointMetricsInterceptor.class.getName() + ".startedAt";
+
+    private final MeterRegistry meterRegistry;
+
+    public EndpointMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            request.setAttribute(STARTED_AT, System.nanoTime());
+            QueryCounter.start();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object startedAt = request.getAttribute(STARTED_AT);
+        if (!(handler instanceof HandlerMethod) || startedAt == null) {
+            return;
+        }
+        long queries = QueryCounter.stop();
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        String endpoint = handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+        Timer.builder("delivery.endpoint.latency")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - (Long) startedAt, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("delivery.endpoint.repository.calls")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(queries);
+    }
+}
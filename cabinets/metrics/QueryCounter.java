@@ -0,0 +1,38 @@
+package ee.coop.delivery.metrics;
+
+/**
+ * Per-thread count of repository calls, active between {@link #start()} and {@link #stop()}.
+ * Calls made outside of a started scope, e.g. from scheduled jobs, are not counted.
+ */
+public final class QueryCounter {
+
+    private static final ThreadLocal<long[]> COUNT = new ThreadLocal<>();
+
+    private QueryCounter() {
+    }
+
+    public static void start() {
+        COUNT.set(new long[1]);
+    }
+
+    /**
+     * @return repository calls since {@link #start()}, 0 when no scope was started
+     */
+    public static long stop() {
+        long[] count = COUNT.get();
+        COUNT.remove();
+        return count != null ? count[0] : 0;
+    }
+
+    public static long current() {
+        long[] count = COUNT.get();
+        return count != null ? count[0] : 0;
+    }
+
+    static void increment() {
+        long[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+}
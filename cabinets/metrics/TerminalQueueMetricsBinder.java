@@ -0,0 +1,40 @@
+package ee.coop.delivery.metrics;
+
+import ee.coop.delivery.service.TerminalEventQueue;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the terminal event queue as delivery.terminal.queue.*: pending depth, received, coalesced and
+ * rejected events, and the time events waited before they were applied.
+ */
+@Component
+public class TerminalQueueMetricsBinder implements MeterBinder {
+
+    private final TerminalEventQueue terminalEventQueue;
+
+    public TerminalQueueMetricsBinder(TerminalEventQueue terminalEventQueue) {
+        this.terminalEventQueue = terminalEventQueue;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("delivery.terminal.queue.depth", terminalEventQueue, TerminalEventQueue::getQueueDepth)
+                .register(registry);
+        FunctionCounter.builder("delivery.terminal.queue.received", terminalEventQueue, TerminalEventQueue::getReceivedCount)
+                .register(registry);
+        FunctionCounter.builder("delivery.terminal.queue.coalesced", terminalEventQueue, TerminalEventQueue::getCoalescedCount)
+                .register(registry);
+        FunctionCounter.builder("delivery.terminal.queue.rejected", terminalEventQueue, TerminalEventQueue::getRejectedCount)
+                .register(registry);
+        FunctionTimer.builder("delivery.terminal.queue.wait", terminalEventQueue, TerminalEventQueue::getDrainedCount,
+                TerminalEventQueue::getDrainLatencyMillis, TimeUnit.MILLISECONDS)
+                .register(registry);
+    }
+}
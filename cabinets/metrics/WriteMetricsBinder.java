@@ -0,0 +1,38 @@
+package ee.coop.delivery.metrics;
+
+import ee.coop.delivery.service.CabinetService;
+import ee.coop.delivery.service.TerminalSnapshotService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the writes the terminal event path avoids as delivery.writes.avoided tagged with the entity,
+ * and repeated terminal events acknowledged from memory as delivery.terminal.snapshots.skipped.
+ */
+@Component
+public class WriteMetricsBinder implements MeterBinder {
+
+    private final CabinetService cabinetService;
+    private final TerminalSnapshotService terminalSnapshotService;
+
+    public WriteMetricsBinder(CabinetService cabinetService, TerminalSnapshotService terminalSnapshotService) {
+        this.cabinetService = cabinetService;
+        this.terminalSnapshotService = terminalSnapshotService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("delivery.writes.avoided", cabinetService, CabinetService::getAvoidedCabinetWrites)
+                .tag("entity", "cabinet")
+                .register(registry);
+        FunctionCounter.builder("delivery.writes.avoided", cabinetService, CabinetService::getAvoidedLockerWrites)
+                .tag("entity", "locker")
+                .register(registry);
+        FunctionCounter.builder("delivery.terminal.snapshots.skipped", terminalSnapshotService, TerminalSnapshotService::getSkippedCount)
+                .register(registry);
+        FunctionCounter.builder("delivery.terminal.snapshots.dropped", terminalSnapshotService, TerminalSnapshotService::getDroppedCount)
+                .register(registry);
+    }
+}
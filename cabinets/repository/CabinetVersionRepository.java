@@ -0,0 +1,28 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.CabinetVersion;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Every change adds one to its row, so the sum over the rows changes with every commit, whatever order they commit in
+ */
+public interface CabinetVersionRepository extends Repository<CabinetVersion, Long> {
+
+    @Modifying
+    @Query(value = "insert into delivery.cabinet_version (cabinet_id, version) values (:cabinetId, 1) " +
+            "on conflict (cabinet_id) do update set version = cabinet_version.version + 1",
+            nativeQuery = true)
+    int increment(@Param("cabinetId") Long cabinetId);
+
+    @Query("select v.version from CabinetVersion v where v.cabinetId = :cabinetId")
+    Long findVersion(@Param("cabinetId") Long cabinetId);
+
+    @Query("select coalesce(sum(v.version), 0) from CabinetVersion v where v.cabinetId > 0")
+    Long sumCabinetVersions();
+
+    @Query("select coalesce(sum(v.version), 0) from CabinetVersion v")
+    Long sumVersions();
+}
@@ -0,0 +1,19 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.Cabinet;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Targeted cabinet updates, see LockerWriteRepository
+ */
+public interface CabinetWriteRepository extends Repository<Cabinet, Long> {
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Cabinet c set c.status = :status where c.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") String status);
+}
@@ -0,0 +1,27 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.Delivery;
+import ee.coop.delivery.dto.TimeSlotBookingCount;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read-only aggregates over deliveries, each resolved with a single query
+ */
+public interface DeliveryReadRepository extends Repository<Delivery, Long> {
+
+    // deliveries in one of the released statuses, such as cancelled ones, no longer take a place
+    @Query("select new ee.coop.delivery.dto.TimeSlotBookingCount(d.deliveryDate, d.timeSlotConfigId, count(d)) " +
+            "from Delivery d " +
+            "where d.timeSlotConfigId in :timeSlotConfigIds " +
+            "and d.deliveryDate between :from and :to " +
+            "and d.status not in :releasedStatuses " +
+            "group by d.deliveryDate, d.timeSlotConfigId")
+    List<TimeSlotBookingCount> countBookingsByDateAndTimeSlot(@Param("timeSlotConfigIds") Collection<Long> timeSlotConfigIds,
+                                                              @Param("from") Long from, @Param("to") Long to,
+                                                              @Param("releasedStatuses") Collection<String> releasedStatuses);
+}
@@ -0,0 +1,32 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.LockerLogCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface LockerLogCounterRepository extends JpaRepository<LockerLogCounter, Long> {
+
+    @Modifying
+    @Query(value = "insert into delivery.locker_log_counter " +
+            "(locker_id, total_count, inactive_count, maintenance_count, last_change_at) " +
+            "values (:lockerId, :total, :inactive, :maintenance, :changedAt) " +
+            "on conflict (locker_id) do update set " +
+            "total_count = locker_log_counter.total_count + excluded.total_count, " +
+            "inactive_count = locker_log_counter.inactive_count + excluded.inactive_count, " +
+            "maintenance_count = locker_log_counter.maintenance_count + excluded.maintenance_count, " +
+            "last_change_at = greatest(locker_log_counter.last_change_at, excluded.last_change_at)",
+            nativeQuery = true)
+    int increment(@Param("lockerId") Long lockerId, @Param("total") long total, @Param("inactive") long inactive,
+                  @Param("maintenance") long maintenance, @Param("changedAt") Long changedAt);
+
+    List<LockerLogCounter> findAllByLockerIdBetween(Long fromLockerId, Long toLockerId);
+
+    // blocks increments until the surrounding transaction ends, reads still go through
+    @Modifying
+    @Query(value = "lock table delivery.locker_log_counter in share row exclusive mode", nativeQuery = true)
+    void lockForReconcile();
+}
@@ -0,0 +1,21 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.LockerLogCounter;
+import ee.coop.delivery.domain.LockerLogDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface LockerLogDailyRepository extends JpaRepository<LockerLogDaily, Long> {
+    List<LockerLogDaily> findAllByLockerIdAndDayBetween(Long lockerId, Long from, Long to);
+
+    @Query("select new ee.coop.delivery.domain.LockerLogCounter(d.lockerId, sum(d.entryCount), " +
+            "sum(d.inactiveCount), sum(d.maintenanceCount), max(d.day)) " +
+            "from LockerLogDaily d " +
+            "where d.lockerId between :fromLockerId and :toLockerId " +
+            "group by d.lockerId")
+    List<LockerLogCounter> countGroupedByLockerBetween(@Param("fromLockerId") Long fromLockerId,
+                                                       @Param("toLockerId") Long toLockerId);
+}
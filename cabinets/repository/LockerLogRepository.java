@@ -1,7 +1,14 @@
 package ee.coop.delivery.repository;
 
 import ee.coop.delivery.domain.LockerLog;
+import ee.coop.delivery.domain.LockerLogCounter;
+import ee.coop.delivery.domain.LockerLogDaily;
+import ee.coop.delivery.dto.LockerLogEntry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -10,6 +17,59 @@ public interface LockerLogRepository extends JpaRepository<LockerLog, Long> {
     List<LockerLog> findAllByCabinetId(Long cabinetId);
 
     Integer countAllByLockerId(Long lockerId);
-}
 
+    // time bounded variants, these only touch the partitions of the requested range
+    List<LockerLog> findAllByCabinetIdAndExtCreatedAtBetween(Long cabinetId, Long from, Long to);
+    Integer countAllByLockerIdAndExtCreatedAtGreaterThanEqual(Long lockerId, Long from);
+
+    LockerLog findFirstByExtCreatedAtIsNotNullOrderByExtCreatedAtAsc();
+
+    @Query("select new ee.coop.delivery.domain.LockerLogDaily(ll.locker.id, ll.cabinet.id, " +
+            "ll.extCreatedAt - mod(ll.extCreatedAt, 86400000), count(ll.id), " +
+            "sum(case when ll.status = :inactiveStatus then 1 else 0 end), " +
+            "sum(case when ll.statusMaintenance is not null then 1 else 0 end)) " +
+            "from LockerLog ll " +
+            "where ll.extCreatedAt >= :from and ll.extCreatedAt < :to " +
+            "group by ll.locker.id, ll.cabinet.id, ll.extCreatedAt - mod(ll.extCreatedAt, 86400000)")
+    List<LockerLogDaily> summarizeDaily(@Param("from") Long from, @Param("to") Long to,
+                                        @Param("inactiveStatus") String inactiveStatus);
+
+    @Query("select new ee.coop.delivery.domain.LockerLogCounter(ll.locker.id, count(ll.id), " +
+            "sum(case when ll.status = :inactiveStatus then 1 else 0 end), " +
+            "sum(case when ll.statusMaintenance is not null then 1 else 0 end), max(ll.extCreatedAt)) " +
+            "from LockerLog ll " +
+            "where ll.locker.id between :fromLockerId and :toLockerId " +
+            "group by ll.locker.id")
+    List<LockerLogCounter> countGroupedByLockerBetween(@Param("inactiveStatus") String inactiveStatus,
+                                                       @Param("fromLockerId") Long fromLockerId,
+                                                       @Param("toLockerId") Long toLockerId);
 
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from LockerLog ll where ll.extCreatedAt >= :from and ll.extCreatedAt < :to")
+    int deleteAllByExtCreatedAtInRange(@Param("from") Long from, @Param("to") Long to);
+
+    @Query("select new ee.coop.delivery.dto.LockerLogEntry(ll.id, ll.locker.id, ll.cabinet.id, ll.status, " +
+            "ll.statusMaintenance, ll.statusTempMode, ll.comment, ll.extCreatedAt) " +
+            "from LockerLog ll " +
+            "where ll.locker.id = :lockerId " +
+            "order by ll.id")
+    List<LockerLogEntry> findAllEntriesByLockerId(@Param("lockerId") Long lockerId);
+
+    @Query("select new ee.coop.delivery.dto.LockerLogEntry(ll.id, ll.locker.id, ll.cabinet.id, ll.status, " +
+            "ll.statusMaintenance, ll.statusTempMode, ll.comment, ll.extCreatedAt) " +
+            "from LockerLog ll " +
+            "where ll.locker.id = :lockerId and ll.id < :beforeId " +
+            "order by ll.id desc")
+    List<LockerLogEntry> findEntriesByLockerId(@Param("lockerId") Long lockerId, @Param("beforeId") Long beforeId,
+                                               Pageable pageable);
+
+    @Query("select new ee.coop.delivery.dto.LockerLogEntry(ll.id, ll.locker.id, ll.cabinet.id, ll.status, " +
+            "ll.statusMaintenance, ll.statusTempMode, ll.comment, ll.extCreatedAt) " +
+            "from LockerLog ll " +
+            "where ll.locker.id = :lockerId and ll.id < :beforeId and ll.extCreatedAt between :from and :to " +
+            "order by ll.id desc")
+    List<LockerLogEntry> findEntriesByLockerIdAndExtCreatedAtBetween(@Param("lockerId") Long lockerId,
+                                                                     @Param("beforeId") Long beforeId,
+                                                                     @Param("from") Long from, @Param("to") Long to,
+                                                                     Pageable pageable);
+}
@@ -0,0 +1,39 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.Locker;
+import ee.coop.delivery.dto.LockerDetails;
+import ee.coop.delivery.dto.LockerRow;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Read-only projections over lockers, each resolved with a single query
+ */
+public interface LockerReadRepository extends Repository<Locker, Long> {
+
+    // joins at most one route and one classifier per locker, so a cabinet on several routes
+    // or a duplicated classifier key does not repeat the locker
+    @Query("select new ee.coop.delivery.dto.LockerDetails(c.name, l.index, s.name, r.name, l.comment, cl.valueEt, l.id, coalesce(lc.totalCount, 0L)) " +
+            "from Locker l " +
+            "join Cabinet c on c.id = l.cabinetId " +
+            "left join Route r on r.id = (select min(r2.id) from Route r2 where r2.cabinetId = l.cabinetId) " +
+            "left join r.store s " +
+            "left join Classifier cl on cl.id = (select min(cl2.id) from Classifier cl2 where cl2.key = l.status) " +
+            "left join LockerLogCounter lc on lc.lockerId = l.id " +
+            "where l.status <> :activeStatus " +
+            "order by l.id")
+    List<LockerDetails> findLockerDetailsByStatusNot(@Param("activeStatus") String activeStatus);
+
+    @Query("select new ee.coop.delivery.dto.LockerRow(l.id, l.cabinetId, l.index, l.status, l.statusMaintenance, " +
+            "l.statusTempMode, l.thermoMode, l.comment) " +
+            "from Locker l " +
+            "where l.cabinetId = :cabinetId " +
+            "order by l.index")
+    List<LockerRow> findRowsByCabinetId(@Param("cabinetId") Long cabinetId);
+
+    @Query("select max(l.id) from Locker l")
+    Long findMaxId();
+}
@@ -0,0 +1,27 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.Locker;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * Targeted locker updates that only set the changed column. They bypass dirty checking, so the
+ * lockers must not be changed through their entities in the same transaction before the update.
+ */
+public interface LockerWriteRepository extends Repository<Locker, Long> {
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Locker l set l.status = :status where l.id in :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") String status);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Locker l set l.thermoMode = :thermoMode where l.id in :ids")
+    int updateThermoMode(@Param("ids") Collection<Long> ids, @Param("thermoMode") Long thermoMode);
+}
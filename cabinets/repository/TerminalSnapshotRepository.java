@@ -0,0 +1,22 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.TerminalSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface TerminalSnapshotRepository extends JpaRepository<TerminalSnapshot, String> {
+
+    @Modifying
+    @Query(value = "insert into delivery.terminal_snapshot (terminal_id, fingerprint, applied_at) " +
+            "values (:terminalId, :fingerprint, :appliedAt) " +
+            "on conflict (terminal_id) do update set " +
+            "fingerprint = excluded.fingerprint, applied_at = excluded.applied_at",
+            nativeQuery = true)
+    int upsert(@Param("terminalId") String terminalId, @Param("fingerprint") long fingerprint, @Param("appliedAt") Long appliedAt);
+
+    @Modifying
+    @Query("delete from TerminalSnapshot s where s.terminalId = :terminalId")
+    int deleteByTerminalId(@Param("terminalId") String terminalId);
+}
@@ -0,0 +1,15 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.TimeSlotConfig;
+import org.springframework.data.repository.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read-only time slot config lookups spanning many cabinets
+ */
+public interface TimeSlotConfigReadRepository extends Repository<TimeSlotConfig, Long> {
+
+    List<TimeSlotConfig> findAllByCabinetIdInOrderByStartTime(Collection<Long> cabinetIds);
+}
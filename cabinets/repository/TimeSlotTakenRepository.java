@@ -0,0 +1,37 @@
+package ee.coop.delivery.repository;
+
+import ee.coop.delivery.domain.TimeSlotTaken;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Conditional updates of the shared time slot capacity rows, each row is only locked by the statement changing it
+ */
+public interface TimeSlotTakenRepository extends Repository<TimeSlotTaken, TimeSlotTaken.Key> {
+
+    // affects no row when the slot is full or has no row for the day yet
+    @Modifying
+    @Query(value = "update delivery.time_slot_taken set taken = taken + 1 " +
+            "where delivery_date = :date and time_slot_config_id = :timeSlotConfigId and taken < :maxOrders",
+            nativeQuery = true)
+    int take(@Param("date") Long date, @Param("timeSlotConfigId") Long timeSlotConfigId, @Param("maxOrders") long maxOrders);
+
+    @Modifying
+    @Query(value = "update delivery.time_slot_taken set taken = taken - 1 " +
+            "where delivery_date = :date and time_slot_config_id = :timeSlotConfigId and taken > 0",
+            nativeQuery = true)
+    int giveBack(@Param("date") Long date, @Param("timeSlotConfigId") Long timeSlotConfigId);
+
+    @Modifying
+    @Query(value = "insert into delivery.time_slot_taken (delivery_date, time_slot_config_id, taken) " +
+            "values (:date, :timeSlotConfigId, :taken) " +
+            "on conflict (delivery_date, time_slot_config_id) do nothing",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("date") Long date, @Param("timeSlotConfigId") Long timeSlotConfigId, @Param("taken") long taken);
+
+    @Modifying
+    @Query(value = "delete from delivery.time_slot_taken where delivery_date < :date", nativeQuery = true)
+    int deleteAllBefore(@Param("date") Long date);
+}
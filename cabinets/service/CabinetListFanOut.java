@@ -0,0 +1,119 @@
+package ee.coop.delivery.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs per-cabinet work of the cabinet list on a dedicated pool. The pool size is the hard limit of
+ * database connections the cabinet list can hold at once, across all concurrent requests.
+ * A parallelism of 1 keeps the old sequential behaviour on the calling thread.
+ * Workers have no persistence context, tasks must not touch lazy associations.
+ */
+@Service
+public class CabinetListFanOut {
+
+    private final int parallelism;
+    private final long timeoutMillis;
+    private final boolean partialResults;
+    private final ExecutorService workers;
+
+    private static final Logger log = LoggerFactory.getLogger(CabinetListFanOut.class);
+
+    public CabinetListFanOut(@Value("${delivery.cabinet-list.parallelism:1}") int parallelism,
+                             @Value("${delivery.cabinet-list.timeout-millis:10000}") long timeoutMillis,
+                             @Value("${delivery.cabinet-list.partial-results:true}") boolean partialResults) {
+        this.parallelism = parallelism;
+        this.timeoutMillis = timeoutMillis;
+        this.partialResults = partialResults;
+        this.workers = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, new WorkerFactory()) : null;
+    }
+
+    /**
+     * Runs the task for every item and hands the results to the collector on the calling thread.
+     * Results of tasks that did not finish in time are never collected, even if they finish later.
+     *
+     * @return false when some items did not finish in time and partial results are allowed
+     * @throws IllegalStateException when some items did not finish and partial results are not allowed
+     */
+    public <T, R> boolean forEach(Collection<T> items, Function<T, R> task, Consumer<R> collector) {
+        if (workers == null) {
+            for (T item : items) {
+                collector.accept(task.apply(item));
+            }
+            return true;
+        }
+        List<Callable<R>> calls = new ArrayList<>(items.size());
+        for (T item : items) {
+            calls.add(() -> task.apply(item));
+        }
+        List<Future<R>> futures;
+        try {
+            futures = workers.invokeAll(calls, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading cabinet list", e);
+        }
+        int unfinished = 0;
+        for (Future<R> future : futures) {
+            try {
+                collector.accept(future.get());
+            } catch (CancellationException e) {
+                unfinished++;
+            } catch (ExecutionException e) {
+                log.error("Failed to load cabinet list row", e.getCause());
+                unfinished++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unfinished++;
+            }
+        }
+        if (unfinished == 0) {
+            return true;
+        }
+        if (!partialResults) {
+            throw new IllegalStateException(String.format("%d of %d cabinet list rows not loaded", unfinished, items.size()));
+        }
+        log.warn(String.format("Returning partial cabinet list, %d of %d rows not loaded", unfinished, items.size()));
+        return false;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cabinet-list-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
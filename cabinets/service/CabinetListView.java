@@ -0,0 +1,128 @@
+package ee.coop.delivery.service;
+
+import ee.coop.ECoop;
+import ee.coop.core.domain.Classifier;
+import ee.coop.delivery.domain.Cabinet;
+import ee.coop.delivery.domain.Locker;
+import ee.coop.delivery.dto.CabinetListRow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Read model behind the cabinet list. Rows are built once and afterwards patched
+ * by {@link CabinetService} whenever a locker, cabinet or route changes.
+ * A view is only published once it is complete, cabinets changed while it was
+ * still loading are marked stale and reloaded after publishing.
+ */
+class CabinetListView {
+
+    private final ConcurrentSkipListMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+    private final Set<Long> staleCabinetIds = ConcurrentHashMap.newKeySet();
+
+    void markStale(Long cabinetId) {
+        staleCabinetIds.add(cabinetId);
+    }
+
+    Set<Long> drainStale() {
+        Set<Long> drained = new HashSet<>(staleCabinetIds);
+        staleCabinetIds.removeAll(drained);
+        return drained;
+    }
+
+    void put(CabinetListRow row, List<Locker> lockers) {
+        put(entry(row, lockers));
+    }
+
+    void put(Entry entry) {
+        entries.put(entry.row.getId(), entry);
+    }
+
+    static Entry entry(CabinetListRow row, List<Locker> lockers) {
+        Set<Long> inactiveLockerIds = new HashSet<>();
+        for (Locker locker : lockers) {
+            if (ECoop.LOCKER_STATE_INACTIVE.equals(locker.getStatus())) {
+                inactiveLockerIds.add(locker.getId());
+            }
+        }
+        return new Entry(row, inactiveLockerIds);
+    }
+
+    void remove(Long cabinetId) {
+        entries.remove(cabinetId);
+    }
+
+    void lockerStatusChanged(Long cabinetId, Long lockerId, String status) {
+        Entry entry = entries.get(cabinetId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (ECoop.LOCKER_STATE_INACTIVE.equals(status)) {
+                entry.inactiveLockerIds.add(lockerId);
+            } else {
+                entry.inactiveLockerIds.remove(lockerId);
+            }
+        }
+    }
+
+    void cabinetStatusChanged(Long cabinetId, Classifier status) {
+        Entry entry = entries.get(cabinetId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.row.setStatus(status);
+        }
+    }
+
+    void cabinetChanged(Cabinet cabinet) {
+        Entry entry = entries.get(cabinet.getId());
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.row.setName(cabinet.getName());
+            entry.row.setSecondaryId(cabinet.getSecondaryId());
+            entry.row.setAddress(cabinet.getAddress());
+        }
+    }
+
+    List<CabinetListRow> getRows() {
+        List<CabinetListRow> rows = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                rows.add(entry.toRow());
+            }
+        }
+        return rows;
+    }
+
+    static class Entry {
+        private final CabinetListRow row;
+        private final Set<Long> inactiveLockerIds;
+
+        private Entry(CabinetListRow row, Set<Long> inactiveLockerIds) {
+            this.row = row;
+            this.inactiveLockerIds = inactiveLockerIds;
+        }
+
+        private CabinetListRow toRow() {
+            CabinetListRow copy = new CabinetListRow();
+            copy.setId(row.getId());
+            copy.setName(row.getName());
+            copy.setSecondaryId(row.getSecondaryId());
+            copy.setAddress(row.getAddress());
+            copy.setRouteName(row.getRouteName());
+            copy.setStoreName(row.getStoreName());
+            copy.setStatus(row.getStatus());
+            copy.setLockerErrorCount((long) inactiveLockerIds.size());
+            copy.setLockerStatus(inactiveLockerIds.isEmpty() ? ECoop.LOCKER_STATE_ACTIVE : ECoop.LOCKER_STATE_INACTIVE);
+            return copy;
+        }
+    }
+}
@@ -4,16 +4,20 @@ import ee.coop.ECoop;
 import ee.coop.adapter.strongpoint.*;
 import ee.coop.core.domain.Classifier;
 import ee.coop.core.domain.UserCabinet;
-import ee.coop.core.repository.ClassifierRepository;
 import ee.coop.core.repository.UserCabinetRepository;
+import ee.coop.core.service.ClassifierRegistry;
 import ee.coop.delivery.domain.*;
 import ee.coop.delivery.dto.CabinetListRow;
 import ee.coop.delivery.dto.CabinetLogRow;
 import ee.coop.delivery.dto.LockerDetails;
+import ee.coop.delivery.dto.LockerLogEntry;
 import ee.coop.delivery.dto.LockerLogUpdate;
+import ee.coop.delivery.dto.LockerRow;
+import ee.coop.delivery.dto.LockerStateEvent;
+import ee.coop.delivery.dto.LockerStatusUpdate;
+import ee.coop.delivery.dto.LockerStatusUpdateResult;
 import ee.coop.delivery.repository.*;
 import ee.coop.erp.domain.Order;
-import ee.coop.erp.domain.Store;
 import ee.coop.erp.repository.OrderRepository;
 import ee.coop.erp.repository.StoreRepository;
 import ee.coop.utilites.DateTimeUtil;
@@ -21,54 +25,94 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class CabinetService {
 
     private final StrongPointService strongPointService;
     private final CabinetRepository cabinetRepository;
+    private final CabinetWriteRepository cabinetWriteRepository;
     private final LockerRepository lockerRepository;
     private final LockerLogRepository lockerLogRepository;
+    private final LockerReadRepository lockerReadRepository;
+    private final LockerWriteRepository lockerWriteRepository;
+    private final LockerLogCounterService lockerLogCounterService;
     private final TimeSlotConfigRepository timeSlotConfigRepository;
     private final UserCabinetRepository userCabinetRepository;
     private final DeliveryRepository deliveryRepository;
     private final RouteRepository routeRepository;
     private final StoreRepository storeRepository;
-    private final ClassifierRepository classifierRepository;
+    private final ClassifierRegistry classifierRegistry;
     private final RouteVersionRepository routeVersionRepository;
     private final RouteVersionCabinetsRepository routeVersionCabinetsRepository;
     private final OrderRepository orderRepository;
     private final CabinetLogRepository cabinetLogRepository;
+    private final CabinetListFanOut cabinetListFanOut;
+    private final CabinetVersions cabinetVersions;
+    private final LockerEventPublisher lockerEventPublisher;
+    private final TerminalSnapshotService terminalSnapshotService;
+    private final AtomicReference<CabinetListView> cabinetListView = new AtomicReference<>();
+    private final Object cabinetListLoad = new Object();
+    private volatile CabinetListView loadingCabinetListView;
+    private final AtomicReference<AvailableCabinets> availableCabinets = new AtomicReference<>();
+    private final AtomicReference<RouteVersionIndex> routeVersionIndex = new AtomicReference<>();
+    private final AtomicLong avoidedCabinetWrites = new AtomicLong();
+    private final AtomicLong avoidedLockerWrites = new AtomicLong();
 
     private static final Logger log = LoggerFactory.getLogger(CabinetService.class);
+    private static final int LOCKER_LOG_PAGE_SIZE = 500;
 
     @Autowired
-    public CabinetService(OrderRepository orderRepository, StrongPointService strongPointService, CabinetRepository cabinetRepository, LockerRepository lockerRepository, LockerLogRepository lockerLogRepository,
-                          TimeSlotConfigRepository timeSlotConfigRepository, UserCabinetRepository userCabinetRepository, DeliveryRepository deliveryRepository,
-                          RouteRepository routeRepository, StoreRepository storeRepository, ClassifierRepository classifierRepository, RouteVersionCabinetsRepository routeVersionCabinetsRepository,
-                          RouteVersionRepository routeVersionRepository, CabinetLogRepository cabinetLogRepository) {
+    public CabinetService(OrderRepository orderRepository, StrongPointService strongPointService, CabinetRepository cabinetRepository, CabinetWriteRepository cabinetWriteRepository,
+                          LockerRepository lockerRepository, LockerLogRepository lockerLogRepository, LockerReadRepository lockerReadRepository, LockerWriteRepository lockerWriteRepository,
+                          LockerLogCounterService lockerLogCounterService, TimeSlotConfigRepository timeSlotConfigRepository, UserCabinetRepository userCabinetRepository, DeliveryRepository deliveryRepository,
+                          RouteRepository routeRepository, StoreRepository storeRepository, ClassifierRegistry classifierRegistry, RouteVersionCabinetsRepository routeVersionCabinetsRepository,
+                          RouteVersionRepository routeVersionRepository, CabinetLogRepository cabinetLogRepository,
+                          CabinetListFanOut cabinetListFanOut, CabinetVersions cabinetVersions, LockerEventPublisher lockerEventPublisher,
+                          TerminalSnapshotService terminalSnapshotService) {
 
         this.strongPointService = strongPointService;
         this.cabinetRepository = cabinetRepository;
+        this.cabinetWriteRepository = cabinetWriteRepository;
         this.lockerRepository = lockerRepository;
         this.lockerLogRepository = lockerLogRepository;
+        this.lockerReadRepository = lockerReadRepository;
+        this.lockerWriteRepository = lockerWriteRepository;
+        this.lockerLogCounterService = lockerLogCounterService;
         this.timeSlotConfigRepository = timeSlotConfigRepository;
         this.userCabinetRepository = userCabinetRepository;
         this.deliveryRepository = deliveryRepository;
         this.routeRepository = routeRepository;
         this.storeRepository = storeRepository;
-        this.classifierRepository = classifierRepository;
+        this.classifierRegistry = classifierRegistry;
         this.routeVersionRepository = routeVersionRepository;
         this.routeVersionCabinetsRepository = routeVersionCabinetsRepository;
         this.orderRepository = orderRepository;
         this.cabinetLogRepository = cabinetLogRepository;
+        this.cabinetListFanOut = cabinetListFanOut;
+        this.cabinetVersions = cabinetVersions;
+        this.lockerEventPublisher = lockerEventPublisher;
+        this.terminalSnapshotService = terminalSnapshotService;
     }
 
     public Iterable<Cabinet> getCabinets() {
@@ -76,84 +120,210 @@ public class CabinetService {
     }
 
     public Iterable<Cabinet> getAvailableCabinets() {
-        List<RouteVersion> routeVersions = routeVersionRepository.findAll();
-        List<Cabinet> availableCabinets = new ArrayList<>();
         Long currentDate = DateTimeUtil.currentDate();
-        for (RouteVersion routeVersion : routeVersions) {
-            Long validFrom = DateTimeUtil.resetTime(routeVersion.getValidFrom());
-            if ( validFrom <= currentDate && routeVersion.getValidUntil() == null || validFrom <= currentDate && DateTimeUtil.resetTime(routeVersion.getValidUntil()) >= currentDate ) {
-                List<RouteVersionCabinets> activeRouteVersionCabinets = routeVersionCabinetsRepository.findAllByRouteVersionId(routeVersion.getId());
-                for (RouteVersionCabinets routeVersionCabinets : activeRouteVersionCabinets) {
-                    Cabinet cabinet = routeVersionCabinets.getCabinet();
-                    availableCabinets.add(cabinet);
+        AvailableCabinets snapshot = availableCabinets.get();
+        if (snapshot != null && snapshot.date.equals(currentDate)) {
+            return snapshot.cabinets;
+        }
+        AvailableCabinets resolved = resolveAvailableCabinets(currentDate);
+        // not published if a route version was edited in the meantime
+        availableCabinets.compareAndSet(snapshot, resolved);
+        return resolved.cabinets;
+    }
+
+    @Scheduled(cron = "0 0 0 * * *")
+    public void refreshAvailableCabinets() {
+        availableCabinets.set(resolveAvailableCabinets(DateTimeUtil.currentDate()));
+    }
+
+    /**
+     * Must be called whenever a route, a route version or its cabinets are edited.
+     * The caches are reloaded once the edit is committed.
+     */
+    public void invalidateRouteVersions() {
+        TransactionCallbacks.afterCommit(() -> {
+            reloadRouteVersions();
+            cabinetVersions.routesChanged();
+        });
+    }
+
+    /**
+     * Fallback for route edits that did not go through {@link #invalidateRouteVersions}, e.g. made on
+     * another instance or directly in the database. Reloads the caches without touching the ETags.
+     */
+    @Scheduled(fixedDelayString = "${delivery.route-versions.refresh-millis:300000}")
+    public void reloadRouteVersions() {
+        routeVersionIndex.set(new RouteVersionIndex(routeVersionRepository.findAll()));
+        refreshAvailableCabinets();
+    }
+
+    /**
+     * Cabinets on the routes active today, narrowed to a route and/or a store
+     */
+    public Set<Long> getCabinetIds(Long routeId, Long storeId) {
+        Set<Long> cabinetIds = new HashSet<>();
+        for (RouteVersion routeVersion : routeVersionIndex().activeOn(DateTimeUtil.currentDate())) {
+            if (routeId != null && !routeId.equals(routeVersion.getRouteId())) {
+                continue;
+            }
+            if (storeId != null) {
+                Optional<Route> route = routeRepository.findById(routeVersion.getRouteId());
+                if (!route.isPresent() || route.get().getStore() == null || !storeId.equals(route.get().getStore().getId())) {
+                    continue;
                 }
             }
+            for (RouteVersionCabinets routeVersionCabinets : routeVersionCabinetsRepository.findAllByRouteVersionId(routeVersion.getId())) {
+                cabinetIds.add(routeVersionCabinets.getCabinet().getId());
+            }
         }
+        return cabinetIds;
+    }
 
-        return availableCabinets;
+    private RouteVersionIndex routeVersionIndex() {
+        RouteVersionIndex index = routeVersionIndex.get();
+        if (index != null) {
+            return index;
+        }
+        RouteVersionIndex loaded = new RouteVersionIndex(routeVersionRepository.findAll());
+        // a reload that happened in the meantime has read newer data, it wins
+        return routeVersionIndex.compareAndSet(null, loaded) ? loaded : routeVersionIndex.get();
     }
 
-    public List<LockerDetails> getInactiveLockers() {
-        List<Locker> lockers = lockerRepository.findAllByStatusNot(ECoop.LOCKER_STATE_ACTIVE);
-        List<LockerDetails> lockerDetailsList = new ArrayList<>();
-        for (Locker locker : lockers) {
-            Cabinet cabinet = cabinetRepository.findOneById(locker.getCabinetId());
-            Route route = routeRepository.findByCabinetId(locker.getCabinetId());
-            Classifier classifier = classifierRepository.findFirstByKey(locker.getStatus());
-            Integer count = lockerLogRepository.countAllByLockerId(locker.getId());
-            if (route != null) {
-                Store store = route.getStore();
-                LockerDetails lockerDetails = new LockerDetails(cabinet.getName(), locker.getIndex(), route.getName(),
-                        store.getName(), locker.getComment(), classifier.getValueEt(), locker.getId(), count);
-                lockerDetailsList.add(lockerDetails);
-            } else {
-                LockerDetails lockerDetails = new LockerDetails();
-                lockerDetails.setCabinetName(cabinet.getName());
-                lockerDetails.setIndex(locker.getIndex());
-                lockerDetails.setComment(locker.getComment());
-                lockerDetails.setStatus(classifier.getValueEt());
-                lockerDetails.setId(locker.getId());
-                lockerDetails.setLogCount(count.longValue());
-                lockerDetailsList.add(lockerDetails);
+    private AvailableCabinets resolveAvailableCabinets(Long date) {
+        List<Cabinet> cabinets = new ArrayList<>();
+        for (RouteVersion routeVersion : routeVersionIndex().activeOn(date)) {
+            for (RouteVersionCabinets routeVersionCabinets : routeVersionCabinetsRepository.findAllByRouteVersionId(routeVersion.getId())) {
+                cabinets.add(routeVersionCabinets.getCabinet());
             }
         }
-        return lockerDetailsList;
+        return new AvailableCabinets(date, Collections.unmodifiableList(cabinets));
+    }
+
+    public List<LockerDetails> getInactiveLockers() {
+        return lockerReadRepository.findLockerDetailsByStatusNot(ECoop.LOCKER_STATE_ACTIVE);
     }
 
     public List<CabinetListRow> getCabinetsForList() {
-        List<Cabinet> cabinets = cabinetRepository.findAll();
-        List<CabinetListRow> cabinetListRows = new ArrayList<>();
-        for (Cabinet cabinet : cabinets) {
-            cabinetListRows.add(toCabinetListRow(cabinet));
+        CabinetListView view = cabinetListView.get();
+        if (view == null) {
+            view = loadCabinetList(null);
         }
-        return cabinetListRows;
+        return view.getRows();
     }
 
-    private CabinetListRow toCabinetListRow(Cabinet cabinet) {
-        CabinetListRow newRow = new CabinetListRow();
-        String lockerStatus = ECoop.LOCKER_STATE_ACTIVE;
-        Long lockersWithErrorCount = 0L;
+    /**
+     * Picks up cabinets that were added or removed outside of this service. The current list
+     * is served until the new one is complete.
+     */
+    @Scheduled(fixedDelayString = "${delivery.cabinet-list.reload-millis:300000}")
+    public void reloadCabinetList() {
+        CabinetListView view = cabinetListView.get();
+        if (view != null) {
+            loadCabinetList(view);
+        }
+    }
+
+    // one load at a time, callers that waited for it get its result instead of loading again
+    private CabinetListView loadCabinetList(CabinetListView replaced) {
+        synchronized (cabinetListLoad) {
+            CabinetListView current = cabinetListView.get();
+            if (current != replaced) {
+                return current;
+            }
+            CabinetListView loading = new CabinetListView();
+            boolean complete;
+            loadingCabinetListView = loading;
+            try {
+                List<Cabinet> cabinets = new ArrayList<>();
+                cabinetRepository.findAll().forEach(cabinets::add);
+                Map<Long, RouteNames> routeNames = loadRouteNames();
+                complete = cabinetListFanOut.forEach(cabinets,
+                        cabinet -> toCabinetListEntry(cabinet, routeNames::get), loading::put);
+                if (complete) {
+                    cabinetListView.set(loading);
+                }
+            } finally {
+                loadingCabinetListView = null;
+            }
+            if (!complete) {
+                // a partial list is served but not kept, the next request loads it again
+                return loading;
+            }
+            for (Long cabinetId : loading.drainStale()) {
+                refreshCabinetListRow(cabinetId);
+            }
+            return loading;
+        }
+    }
+
+    /**
+     * Rebuilds a single cabinet list row, e.g. after the cabinet's route version has changed.
+     */
+    public void refreshCabinetListRow(Long cabinetId) {
+        CabinetListView loading = loadingCabinetListView;
+        if (loading != null) {
+            loading.markStale(cabinetId);
+        }
+        CabinetListView view = cabinetListView.get();
+        if (view == null) {
+            return;
+        }
+        Cabinet cabinet = cabinetRepository.findOneById(cabinetId);
+        if (cabinet == null) {
+            view.remove(cabinetId);
+        } else {
+            view.put(toCabinetListEntry(cabinet, routeId -> routeRepository.findById(routeId).map(RouteNames::new).orElse(null)));
+        }
+    }
+
+    // read on the calling thread, the list workers have no persistence context to load a route's store in
+    private Map<Long, RouteNames> loadRouteNames() {
+        Map<Long, RouteNames> routeNames = new HashMap<>();
+        for (Route route : routeRepository.findAll()) {
+            routeNames.put(route.getId(), new RouteNames(route));
+        }
+        return routeNames;
+    }
+
+    private CabinetListView.Entry toCabinetListEntry(Cabinet cabinet, Function<Long, RouteNames> routeNames) {
         List<Locker> lockers = lockerRepository.findAllByCabinetIdOrderByIndex(cabinet.getId());
-        if (routeVersionCabinetsRepository.findFirstByCabinetId(cabinet.getId()) != null) {
-            RouteVersionCabinets byCabinetId = routeVersionCabinetsRepository.findFirstByCabinetId(cabinet.getId());
+        return CabinetListView.entry(toCabinetListRow(cabinet, routeNames), lockers);
+    }
+
+    /**
+     * Patches the cabinet list once the change is committed, a rolled back change never shows up.
+     * A list that is still loading may have read the cabinet before the change, so its row is reloaded.
+     */
+    private void patchCabinetList(Long cabinetId, Consumer<CabinetListView> patch) {
+        TransactionCallbacks.afterCommit(() -> {
+            // loading first, once it is gone the loaded list is already published
+            CabinetListView loading = loadingCabinetListView;
+            if (loading != null) {
+                loading.markStale(cabinetId);
+            }
+            CabinetListView view = cabinetListView.get();
+            if (view != null) {
+                patch.accept(view);
+            }
+        });
+    }
+
+    private CabinetListRow toCabinetListRow(Cabinet cabinet, Function<Long, RouteNames> routeNames) {
+        CabinetListRow newRow = new CabinetListRow();
+        RouteVersionCabinets byCabinetId = routeVersionCabinetsRepository.findFirstByCabinetId(cabinet.getId());
+        if (byCabinetId != null) {
             RouteVersion routeVersionByVersionId = routeVersionRepository.findOneById(byCabinetId.getRouteVersionId());
-            Optional<Route> routeById = routeRepository.findById(routeVersionByVersionId.getRouteId());
-            newRow.setRouteName(routeById.get().getName());
-            newRow.setStoreName(routeById.get().getStore().getName());
-        }
-        for (Locker locker : lockers) {
-            if (locker.getStatus().equals(ECoop.LOCKER_STATE_INACTIVE)) {
-                lockerStatus = ECoop.LOCKER_STATE_INACTIVE;
-                lockersWithErrorCount++;
+            RouteNames names = routeNames.apply(routeVersionByVersionId.getRouteId());
+            if (names != null) {
+                newRow.setRouteName(names.routeName);
+                newRow.setStoreName(names.storeName);
             }
         }
-        newRow.setLockerStatus(lockerStatus);
-        newRow.setLockerErrorCount(lockersWithErrorCount);
         newRow.setAddress(cabinet.getAddress());
         newRow.setId(cabinet.getId());
         newRow.setSecondaryId(cabinet.getSecondaryId());
         newRow.setName(cabinet.getName());
-        newRow.setStatus(classifierRepository.findFirstByKey(cabinet.getStatus()));
+        newRow.setStatus(classifierRegistry.findFirstByKey(cabinet.getStatus()));
         return newRow;
     }
 
@@ -161,70 +331,171 @@ public class CabinetService {
         return lockerLogRepository.findAllByLockerId(lockerId);
     }
 
+    public List<LockerLogEntry> getLockerLogEntries(Long lockerId) {
+        return lockerLogRepository.findAllEntriesByLockerId(lockerId);
+    }
+
+    /**
+     * One page of the locker log, newest first. The next page starts before the id of the last entry.
+     */
+    public List<LockerLogEntry> getLockerLogEntries(Long lockerId, Long beforeId, Long from, Long to, int limit) {
+        Long before = beforeId != null ? beforeId : Long.MAX_VALUE;
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(limit, LOCKER_LOG_PAGE_SIZE)));
+        if (from == null && to == null) {
+            return lockerLogRepository.findEntriesByLockerId(lockerId, before, page);
+        }
+        return lockerLogRepository.findEntriesByLockerIdAndExtCreatedAtBetween(lockerId, before,
+                from != null ? from : 0L, to != null ? to : Long.MAX_VALUE, page);
+    }
+
+    /**
+     * Walks the whole locker log page by page, so only one page is held in memory at a time.
+     */
+    public void forEachLockerLogEntry(Long lockerId, Long from, Long to, Consumer<LockerLogEntry> consumer) {
+        Long beforeId = null;
+        List<LockerLogEntry> entries;
+        do {
+            entries = getLockerLogEntries(lockerId, beforeId, from, to, LOCKER_LOG_PAGE_SIZE);
+            for (LockerLogEntry entry : entries) {
+                consumer.accept(entry);
+            }
+            if (!entries.isEmpty()) {
+                beforeId = entries.get(entries.size() - 1).getId();
+            }
+        } while (entries.size() == LOCKER_LOG_PAGE_SIZE);
+    }
+
     public List<Locker> getLockers(Long id) {
         return lockerRepository.findAllByCabinetIdOrderByIndex(id);
     }
 
+    public List<LockerRow> getLockerRows(Long cabinetId) {
+        return lockerReadRepository.findRowsByCabinetId(cabinetId);
+    }
+
     public Cabinet getCabinetById(Long id) {
         return cabinetRepository.findOneById(id);
     }
 
     public void deleteCabinet(Long id) {
         cabinetRepository.deleteById(id);
+        patchCabinetList(id, view -> view.remove(id));
+        TransactionCallbacks.afterCommit(() -> availableCabinets.set(null));
+        cabinetVersions.cabinetChanged(id);
     }
 
+    @Transactional
     public void updateLockers(SpTerminalEvent event) {
-        String status;
+        long fingerprint = TerminalSnapshotService.fingerprint(event);
+        if (terminalSnapshotService.isUnchanged(event.getTerminalId(), fingerprint)) {
+            return;
+        }
         Cabinet cabinet = cabinetRepository.findOneByExternalId(event.getTerminalId());
         if (cabinet == null) {
             log.error("No cabinet found for " + event.getTerminalId());
             return;
         }
-        logAndSetCabinetStatus(event);
+        logAndSetCabinetStatus(cabinet, event);
+        long eventTime = getEventTime(event);
+        Map<Long, Locker> lockersByIndex = new HashMap<>();
+        for (Locker locker : lockerRepository.findAllByCabinetIdOrderByIndex(cabinet.getId())) {
+            lockersByIndex.put(locker.getIndex(), locker);
+        }
+        // entities are only changed after the targeted updates, so dirty checking has nothing to flush
+        Map<String, List<Long>> lockerIdsByStatus = new HashMap<>();
+        Map<Long, List<Long>> lockerIdsByThermoMode = new HashMap<>();
+        List<LockerLog> lockerLogs = new ArrayList<>();
+        List<LockerStateEvent> stateEvents = new ArrayList<>();
+        List<Runnable> changes = new ArrayList<>();
         for (SpBox box : event.getBoxes()) {
-            Locker locker = lockerRepository.findOneByCabinetIdAndIndex(cabinet.getId(), box.getBoxIndex());
-            if (locker != null) {
-                status = box.getIsDisabled() ? ECoop.LOCKER_STATE_INACTIVE : ECoop.LOCKER_STATE_ACTIVE;
-                if (!status.equals(locker.getStatus())) {
-                    locker.setStatus(status);
-                    LockerLogUpdate update = new LockerLogUpdate();
-                    update.setStatus(status);
-                    LockerLog log = toLockerLog(locker, update);
-                    lockerLogRepository.save(log);
-                }
-                locker.setThermoMode(box.getTempMode());
-                lockerRepository.save(locker);
-            } else {
+            Locker locker = lockersByIndex.get(box.getBoxIndex());
+            if (locker == null) {
                 log.error(String.format("No locker for cabinet id: %d, locker index: %d", cabinet.getId(), box.getBoxIndex()));
+                continue;
             }
-
+            boolean changed = false;
+            LockerState state = box.getIsDisabled() ? LockerState.INACTIVE : LockerState.ACTIVE;
+            if (state != LockerState.fromKey(locker.getStatus())) {
+                LockerLogUpdate update = new LockerLogUpdate();
+                update.setStatus(state.getKey());
+                lockerLogs.add(toLockerLog(locker, cabinet, update, eventTime));
+                lockerIdsByStatus.computeIfAbsent(state.getKey(), key -> new ArrayList<>()).add(locker.getId());
+                changes.add(() -> locker.setStatus(state.getKey()));
+                patchCabinetList(cabinet.getId(), view -> view.lockerStatusChanged(cabinet.getId(), locker.getId(), state.getKey()));
+                stateEvents.add(LockerStateEvent.lockerStatus(cabinet.getId(), locker.getId(), state.getKey(), eventTime));
+                changed = true;
+            }
+            if (!Objects.equals(box.getTempMode(), locker.getThermoMode())) {
+                Long thermoMode = box.getTempMode();
+                lockerIdsByThermoMode.computeIfAbsent(thermoMode, key -> new ArrayList<>()).add(locker.getId());
+                changes.add(() -> locker.setThermoMode(thermoMode));
+                changed = true;
+            }
+            if (!changed) {
+                avoidedLockerWrites.incrementAndGet();
+            }
+        }
+        // one statement per distinct new value, unchanged lockers cost no statement at all
+        if (!lockerLogs.isEmpty()) {
+            lockerLogRepository.saveAll(lockerLogs);
+            lockerLogCounterService.record(lockerLogs);
+        }
+        for (Map.Entry<String, List<Long>> entry : lockerIdsByStatus.entrySet()) {
+            lockerWriteRepository.updateStatus(entry.getValue(), entry.getKey());
+        }
+        for (Map.Entry<Long, List<Long>> entry : lockerIdsByThermoMode.entrySet()) {
+            lockerWriteRepository.updateThermoMode(entry.getValue(), entry.getKey());
         }
+        changes.forEach(Runnable::run);
+        if (!changes.isEmpty()) {
+            cabinetVersions.cabinetChanged(cabinet.getId());
+        }
+        lockerEventPublisher.publish(stateEvents);
+        terminalSnapshotService.applied(event.getTerminalId(), fingerprint);
     }
 
+    @Transactional
     public Cabinet logAndSetCabinetStatus(SpTerminalEvent event) {
         Cabinet cabinet = cabinetRepository.findOneByExternalId(event.getTerminalId());
-        DateTime dateTime = new DateTime(event.getTimestamp() != null ? event.getTimestamp() : new Date());
         if (cabinet == null) {
             log.error("No cabinet found for " + event.getTerminalId());
             return null;
         }
+        return logAndSetCabinetStatus(cabinet, event);
+    }
+
+    private Cabinet logAndSetCabinetStatus(Cabinet cabinet, SpTerminalEvent event) {
         String newStatus = event.getIsDeleted() ? "CABINET_STATUS_INACTIVE" : "CABINET_STATUS_ACTIVE";
         if (!newStatus.equals(cabinet.getStatus())) {
             CabinetLog log = new CabinetLog();
             log.setCabinetId(cabinet.getId());
             log.setUserId(null);
             log.setStatus(newStatus);
-            log.setExtCreatedAt(dateTime.getMillis());
+            log.setExtCreatedAt(getEventTime(event));
             cabinetLogRepository.save(log);
+            cabinetWriteRepository.updateStatus(cabinet.getId(), newStatus);
             cabinet.setStatus(newStatus);
+            cabinetVersions.cabinetChanged(cabinet.getId());
+            lockerEventPublisher.publish(LockerStateEvent.cabinetStatus(cabinet.getId(), newStatus, getEventTime(event)));
+            Classifier status = classifierRegistry.findFirstByKey(newStatus);
+            patchCabinetList(cabinet.getId(), view -> view.cabinetStatusChanged(cabinet.getId(), status));
+        } else {
+            avoidedCabinetWrites.incrementAndGet();
         }
-        cabinetRepository.save(cabinet);
         return cabinet;
     }
 
 
+    public long getAvoidedCabinetWrites() {
+        return avoidedCabinetWrites.get();
+    }
+
+    public long getAvoidedLockerWrites() {
+        return avoidedLockerWrites.get();
+    }
+
     public List<Classifier> getLockerClassifiers() {
-        List<Classifier> classifiers = classifierRepository.findAllByParentId(ECoop.LOCKER_CLASSIFIER_PARENT_ID);
+        List<Classifier> classifiers = classifierRegistry.findAllByParentId(ECoop.LOCKER_CLASSIFIER_PARENT_ID);
         return classifiers;
     }
 
@@ -232,54 +503,135 @@ public class CabinetService {
         List<Classifier> classifiers = getLockerClassifiers();
         List<Classifier> statuses = new ArrayList<>();
         for (Classifier classifier : classifiers) {
-            if (!classifier.getKey().equals(ECoop.LOCKER_STATE_PACKAGE_NOT_LOADED)
-                    && !classifier.getKey().equals(ECoop.LOCKER_STATE_PACKAGE_LOADED)
-                    && !classifier.getKey().equals(ECoop.LOCKER_STATE_PACKAGE_COLLECTED)
-                    && !classifier.getKey().equals(ECoop.LOCKER_STATE_EMPTY)
-                    && !classifier.getKey().equals(ECoop.LOCKER_STATE_NOT_EMPTY)) {
+            if (!LockerState.PACKAGE.contains(LockerState.fromKey(classifier.getKey()))) {
                 statuses.add(classifier);
             }
         }
         return statuses;
     }
 
-    public LockerLog updateLockerStatus(Long lockerId, LockerLogUpdate lockerLog) {
+    /**
+     * Returns the written log row without its cabinet and locker entities, like the log listings
+     */
+    @Transactional
+    public LockerLogEntry updateLockerStatus(Long lockerId, LockerLogUpdate lockerLog) {
         Locker locker = lockerRepository.findOneById(lockerId);
         LockerLog log = toLockerLog(locker, lockerLog);
         lockerLogRepository.save(log);
+        lockerLogCounterService.record(Collections.singletonList(log));
+        applyLockerLog(locker, log);
+        lockerRepository.save(locker);
+        String status = locker.getStatus();
+        patchCabinetList(locker.getCabinetId(), view -> view.lockerStatusChanged(locker.getCabinetId(), locker.getId(), status));
+        cabinetVersions.cabinetChanged(locker.getCabinetId());
+        if (log.getCabinet() != null) {
+            terminalSnapshotService.invalidate(log.getCabinet().getExternalId());
+        }
+        lockerEventPublisher.publish(LockerStateEvent.lockerStatus(locker.getCabinetId(), locker.getId(), locker.getStatus(), log.getExtCreatedAt()));
+        return new LockerLogEntry(log.getId(), locker.getId(), log.getCabinet() != null ? log.getCabinet().getId() : null,
+                log.getStatus(), log.getStatusMaintenance(), log.getStatusTempMode(), log.getComment(), log.getExtCreatedAt());
+    }
+
+    /**
+     * Applies many status updates at once, lockers and cabinets are resolved with one query each
+     * and logs and lockers are written as batches in one transaction.
+     */
+    @Transactional
+    public List<LockerStatusUpdateResult> updateLockerStatuses(List<LockerStatusUpdate> updates) {
+        List<Long> lockerIds = new ArrayList<>();
+        for (LockerStatusUpdate update : updates) {
+            lockerIds.add(update.getLockerId());
+        }
+        Map<Long, Locker> lockersById = new HashMap<>();
+        for (Locker locker : lockerRepository.findAllById(lockerIds)) {
+            lockersById.put(locker.getId(), locker);
+        }
+        List<Long> cabinetIds = new ArrayList<>();
+        for (Locker locker : lockersById.values()) {
+            cabinetIds.add(locker.getCabinetId());
+        }
+        Map<Long, Cabinet> cabinetsById = new HashMap<>();
+        for (Cabinet cabinet : cabinetRepository.findAllById(cabinetIds)) {
+            cabinetsById.put(cabinet.getId(), cabinet);
+        }
+
+        long now = System.currentTimeMillis();
+        List<LockerStatusUpdateResult> results = new ArrayList<>();
+        List<LockerLog> lockerLogs = new ArrayList<>();
+        Map<Long, Locker> changedLockers = new LinkedHashMap<>();
+        for (LockerStatusUpdate update : updates) {
+            Locker locker = lockersById.get(update.getLockerId());
+            if (locker == null) {
+                results.add(LockerStatusUpdateResult.failed(update.getLockerId(), "Locker not found"));
+                continue;
+            }
+            if (update.getUpdate() == null) {
+                results.add(LockerStatusUpdateResult.failed(update.getLockerId(), "No update given"));
+                continue;
+            }
+            LockerLog log = toLockerLog(locker, cabinetsById.get(locker.getCabinetId()), update.getUpdate(), now);
+            applyLockerLog(locker, log);
+            lockerLogs.add(log);
+            changedLockers.put(locker.getId(), locker);
+            results.add(LockerStatusUpdateResult.updated(locker.getId(), locker.getStatus()));
+        }
+        if (!lockerLogs.isEmpty()) {
+            lockerLogRepository.saveAll(lockerLogs);
+            lockerLogCounterService.record(lockerLogs);
+            lockerRepository.saveAll(changedLockers.values());
+        }
+        List<LockerStateEvent> stateEvents = new ArrayList<>();
+        for (Locker locker : changedLockers.values()) {
+            String status = locker.getStatus();
+            patchCabinetList(locker.getCabinetId(), view -> view.lockerStatusChanged(locker.getCabinetId(), locker.getId(), status));
+            stateEvents.add(LockerStateEvent.lockerStatus(locker.getCabinetId(), locker.getId(), locker.getStatus(), now));
+        }
+        lockerEventPublisher.publish(stateEvents);
+        for (Cabinet cabinet : cabinetsById.values()) {
+            cabinetVersions.cabinetChanged(cabinet.getId());
+            terminalSnapshotService.invalidate(cabinet.getExternalId());
+        }
+        return results;
+    }
+
+    private void applyLockerLog(Locker locker, LockerLog log) {
         locker.setComment(log.getComment());
-        if (log.getStatus().equals(ECoop.LOCKER_STATE_ACTIVE)){
-            locker.setStatus(ECoop.LOCKER_STATE_ACTIVE);
-        }else{
-            locker.setStatus(ECoop.LOCKER_STATE_INACTIVE);
+        if (LockerState.fromKey(log.getStatus()) == LockerState.ACTIVE) {
+            locker.setStatus(LockerState.ACTIVE.getKey());
+        } else {
+            locker.setStatus(LockerState.INACTIVE.getKey());
         }
         locker.setStatusMaintenance(log.getStatusMaintenance() != null ? log.getStatusMaintenance() : locker.getStatusMaintenance());
         locker.setStatusTempMode(log.getStatusTempMode() != null ? log.getStatusTempMode() : locker.getStatusTempMode());
-        lockerRepository.save(locker);
-        return log;
     }
 
     private LockerLog toLockerLog(Locker locker, LockerLogUpdate logUpdate) {
+        return toLockerLog(locker, cabinetRepository.findOneById(locker.getCabinetId()), logUpdate, System.currentTimeMillis());
+    }
+
+    private LockerLog toLockerLog(Locker locker, Cabinet cabinet, LockerLogUpdate logUpdate, long createdAt) {
         LockerLog log = new LockerLog();
+        // partition key of the locker log table, must always be set
+        log.setExtCreatedAt(createdAt);
         log.setComment(logUpdate.getComment() != null ? logUpdate.getComment() : null);
         setLockerLogStatus(log,logUpdate, locker);
-        log.setCabinet(cabinetRepository.findOneById(locker.getCabinetId()));
+        log.setCabinet(cabinet);
         log.setLocker(locker);
         return log;
     }
 
+    private long getEventTime(SpTerminalEvent event) {
+        return new DateTime(event.getTimestamp() != null ? event.getTimestamp() : new Date()).getMillis();
+    }
+
     private LockerLog setLockerLogStatus(LockerLog log, LockerLogUpdate logUpdate, Locker locker) {
-        if (logUpdate.getStatus().equals(ECoop.LOCKER_STATE_INACTIVE) ||
-            logUpdate.getStatus().equals(ECoop.LOCKER_STATE_ACTIVE)) {
+        LockerState state = LockerState.fromKey(logUpdate.getStatus());
+        if (LockerState.ACTIVITY.contains(state)) {
             log.setStatus(logUpdate.getStatus());
-        }else {
+        } else {
             log.setStatus(locker.getStatus());
         }
-        if (logUpdate.getStatus().equals("LOCKER_STATE_NEEDS_ATTENTION") ||
-            logUpdate.getStatus().equals("LOCKER_STATE_NEEDS_REPAIRING") ||
-            logUpdate.getStatus().equals("LOCKER_STATE_NEEDS_CLEANING") ||
-            logUpdate.getStatus().equals("LOCKER_STATE_IN_CLEANING") ||
-            logUpdate.getStatus().equals("LOCKER_STATE_IN_REPAIRING")) {
+        if (LockerState.MAINTENANCE.contains(state)) {
             log.setStatusMaintenance(logUpdate.getStatus());
         } else {
             log.setStatusTempMode(logUpdate.getStatus());
@@ -298,7 +650,31 @@ public class CabinetService {
 //        cabinetById.setWgsLongitude(cabinet.getWgsLongitude());
 //        cabinetById.setAddress(cabinet.getAddress());
 
-        return cabinetRepository.save(cabinetById);
+        Cabinet saved = cabinetRepository.save(cabinetById);
+        patchCabinetList(id, view -> view.cabinetChanged(cabinetById));
+        TransactionCallbacks.afterCommit(() -> availableCabinets.set(null));
+        cabinetVersions.cabinetChanged(id);
+        return saved;
+    }
+
+    private static class RouteNames {
+        private final String routeName;
+        private final String storeName;
+
+        private RouteNames(Route route) {
+            this.routeName = route.getName();
+            this.storeName = route.getStore() != null ? route.getStore().getName() : null;
+        }
+    }
+
+    private static class AvailableCabinets {
+        private final Long date;
+        private final List<Cabinet> cabinets;
+
+        private AvailableCabinets(Long date, List<Cabinet> cabinets) {
+            this.date = date;
+            this.cabinets = cabinets;
+        }
     }
 
   
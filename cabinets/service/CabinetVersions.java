@@ -0,0 +1,82 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.repository.CabinetVersionRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Version counters behind the ETags of the cabinet and locker read endpoints, kept in the database so
+ * that every instance hands out the same ETag for the same data.
+ * <p>
+ * Counters are bumped in the changing transaction and an ETag must be taken before the data is read,
+ * so a response can only ever be older than its ETag claims, never newer. Classifier versions are per
+ * instance like the classifier cache, ETags that include them carry the epoch of the application start.
+ */
+@Service
+public class CabinetVersions {
+
+    private static final Long LOCKER_LISTS = 0L;
+
+    private final CabinetVersionRepository cabinetVersionRepository;
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    public CabinetVersions(CabinetVersionRepository cabinetVersionRepository) {
+        this.cabinetVersionRepository = cabinetVersionRepository;
+    }
+
+    /**
+     * The cabinet or one of its lockers changed, which also changes the locker lists and the cabinet list
+     */
+    @Transactional
+    public void cabinetChanged(Long cabinetId) {
+        cabinetVersionRepository.increment(cabinetId);
+    }
+
+    /**
+     * Something behind the locker lists changed without a known cabinet, e.g. repaired log counters
+     */
+    @Transactional
+    public void lockerListsChanged() {
+        cabinetVersionRepository.increment(LOCKER_LISTS);
+    }
+
+    /**
+     * A route, its store or a route version changed, the locker lists show route and store names.
+     * Called once the edit is committed and the route caches are reloaded, hence its own transaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void routesChanged() {
+        cabinetVersionRepository.increment(LOCKER_LISTS);
+    }
+
+    // an unknown cabinet is at version 0 until it first changes
+    public String cabinetEtag(Long cabinetId) {
+        Long version = cabinetVersionRepository.findVersion(cabinetId);
+        return "c" + cabinetId + "-" + (version != null ? version : 0);
+    }
+
+    public String cabinetListEtag() {
+        return "cl-" + cabinetVersionRepository.sumCabinetVersions();
+    }
+
+    public String lockersEtag() {
+        return "l-" + cabinetVersionRepository.sumVersions();
+    }
+
+    /**
+     * For locker lists that also show classifier values
+     */
+    public String lockersEtag(long classifierVersion) {
+        return lockersEtag() + "-" + epoch + "-" + classifierVersion;
+    }
+
+    /**
+     * For responses behind a per instance version
+     */
+    public String etag(String name, long version) {
+        return epoch + "-" + name + "-" + version;
+    }
+}
@@ -0,0 +1,235 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.dto.LockerStateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes locker and cabinet status changes to dashboards as server-sent events.
+ * <p>
+ * Events are published after the changing transaction commits and numbered with one sequence, the
+ * last events are kept so a reconnecting client resumes from its Last-Event-ID. Every subscriber
+ * has a bounded buffer drained on a small sender pool, a subscriber that falls behind is closed
+ * instead of buffering without limit and resumes from the history when it reconnects.
+ * Sequences are per instance.
+ */
+@Service
+public class LockerEventPublisher {
+
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final LockerStateEvent[] history;
+    private final ExecutorService senders;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // guarded by history
+    private long sequence;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+
+    private static final LockerStateEvent HEARTBEAT = new LockerStateEvent();
+    private static final Logger log = LoggerFactory.getLogger(LockerEventPublisher.class);
+
+    public LockerEventPublisher(@Value("${delivery.locker-events.buffer-size:256}") int bufferSize,
+                                @Value("${delivery.locker-events.history-size:10000}") int historySize,
+                                @Value("${delivery.locker-events.timeout-millis:1800000}") long timeoutMillis,
+                                @Value("${delivery.locker-events.senders:2}") int senders) {
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        this.history = new LockerStateEvent[historySize];
+        this.senders = Executors.newFixedThreadPool(senders, new SenderFactory());
+    }
+
+    public void publish(LockerStateEvent event) {
+        publish(Collections.singletonList(event));
+    }
+
+    public void publish(List<LockerStateEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> dispatch(events));
+    }
+
+    /**
+     * @param cabinetIds cabinets the subscriber is interested in, null for all
+     * @param lastEventId sequence of the last event the client has seen, null for a fresh subscription
+     */
+    public SseEmitter subscribe(Set<Long> cabinetIds, Long lastEventId) {
+        SseEmitter emitter = createEmitter();
+        Subscriber subscriber = new Subscriber(emitter, cabinetIds);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        // registered under the lock so no event falls between the replay and the live stream
+        synchronized (history) {
+            if (lastEventId != null) {
+                replay(subscriber, lastEventId);
+            }
+            if (!subscriber.closed) {
+                subscribers.add(subscriber);
+            }
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedDelay = 15000)
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(HEARTBEAT);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getOverflowCount() {
+        return overflowed.get();
+    }
+
+    // overridden by tests to see what is sent
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        senders.shutdownNow();
+    }
+
+    private void dispatch(List<LockerStateEvent> events) {
+        // sequence and delivery order must agree for every subscriber
+        synchronized (history) {
+            for (LockerStateEvent event : events) {
+                event.setSequence(++sequence);
+                history[(int) (sequence % history.length)] = event;
+                published.incrementAndGet();
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.offer(event);
+                }
+            }
+        }
+    }
+
+    private void replay(Subscriber subscriber, long lastEventId) {
+        long oldest = Math.max(1, sequence - history.length + 1);
+        // a gap larger than the buffer would overflow right away, reloading is cheaper
+        if (lastEventId > sequence || lastEventId + 1 < oldest || sequence - lastEventId > bufferSize) {
+            LockerStateEvent reset = LockerStateEvent.reset(System.currentTimeMillis());
+            reset.setSequence(sequence);
+            subscriber.offer(reset);
+            return;
+        }
+        for (long next = lastEventId + 1; next <= sequence; next++) {
+            subscriber.offer(history[(int) (next % history.length)]);
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<Long> cabinetIds;
+        private final BlockingQueue<LockerStateEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, Set<Long> cabinetIds) {
+            this.emitter = emitter;
+            this.cabinetIds = cabinetIds;
+        }
+
+        private void offer(LockerStateEvent event) {
+            if (closed || !matches(event)) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                if (event == HEARTBEAT) {
+                    return;
+                }
+                overflowed.incrementAndGet();
+                log.warn(String.format("Closing locker event subscriber after %d unsent events", bufferSize));
+                close();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private boolean matches(LockerStateEvent event) {
+            return cabinetIds == null || event.getCabinetId() == null || cabinetIds.contains(event.getCabinetId());
+        }
+
+        private void drain() {
+            try {
+                LockerStateEvent event;
+                while (!closed && (event = buffer.poll()) != null) {
+                    if (event == HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event()
+                                .id(Long.toString(event.getSequence()))
+                                .name(event.getType())
+                                .data(event, MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client went away, the emitter callbacks remove the subscriber
+                closed = true;
+                subscribers.remove(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (!closed && !buffer.isEmpty() && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void close() {
+            closed = true;
+            subscribers.remove(this);
+            buffer.clear();
+            senders.execute(emitter::complete);
+        }
+    }
+
+    private static class SenderFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "locker-events-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package ee.coop.delivery.service;
+
+import ee.coop.ECoop;
+import ee.coop.delivery.domain.LockerLog;
+import ee.coop.delivery.domain.LockerLogCounter;
+import ee.coop.delivery.repository.LockerLogCounterRepository;
+import ee.coop.delivery.repository.LockerLogDailyRepository;
+import ee.coop.delivery.repository.LockerLogRepository;
+import ee.coop.delivery.repository.LockerReadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Maintains {@link LockerLogCounter} rows so log totals can be read without counting the log table.
+ */
+@Service
+public class LockerLogCounterService {
+
+    private final LockerLogCounterRepository lockerLogCounterRepository;
+    private final LockerLogRepository lockerLogRepository;
+    private final LockerLogDailyRepository lockerLogDailyRepository;
+    private final LockerReadRepository lockerReadRepository;
+    private final CabinetVersions cabinetVersions;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private static final Logger log = LoggerFactory.getLogger(LockerLogCounterService.class);
+
+    public LockerLogCounterService(LockerLogCounterRepository lockerLogCounterRepository, LockerLogRepository lockerLogRepository,
+                                   LockerLogDailyRepository lockerLogDailyRepository, LockerReadRepository lockerReadRepository,
+                                   CabinetVersions cabinetVersions, PlatformTransactionManager transactionManager,
+                                   @Value("${delivery.locker-log.reconcile-batch:500}") int batchSize) {
+        this.lockerLogCounterRepository = lockerLogCounterRepository;
+        this.lockerLogRepository = lockerLogRepository;
+        this.lockerLogDailyRepository = lockerLogDailyRepository;
+        this.lockerReadRepository = lockerReadRepository;
+        this.cabinetVersions = cabinetVersions;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds freshly written logs to the counters, in the transaction that wrote them.
+     */
+    @Transactional
+    public void record(List<LockerLog> logs) {
+        Map<Long, LockerLogCounter> deltas = new HashMap<>();
+        for (LockerLog lockerLog : logs) {
+            Long lockerId = lockerLog.getLocker().getId();
+            LockerLogCounter delta = deltas.computeIfAbsent(lockerId, id -> new LockerLogCounter(id, 0L, 0L, 0L, null));
+            delta.setTotalCount(delta.getTotalCount() + 1);
+            if (ECoop.LOCKER_STATE_INACTIVE.equals(lockerLog.getStatus())) {
+                delta.setInactiveCount(delta.getInactiveCount() + 1);
+            }
+            if (lockerLog.getStatusMaintenance() != null) {
+                delta.setMaintenanceCount(delta.getMaintenanceCount() + 1);
+            }
+            if (delta.getLastChangeAt() == null || lockerLog.getExtCreatedAt() > delta.getLastChangeAt()) {
+                delta.setLastChangeAt(lockerLog.getExtCreatedAt());
+            }
+        }
+        for (LockerLogCounter delta : deltas.values()) {
+            lockerLogCounterRepository.increment(delta.getLockerId(), delta.getTotalCount(), delta.getInactiveCount(),
+                    delta.getMaintenanceCount(), delta.getLastChangeAt());
+        }
+    }
+
+    /**
+     * Counters start empty when the table is introduced, they are filled once from the log table
+     * on the first start. Instances starting together are serialized by the reconcile lock.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedIfEmpty() {
+        if (lockerLogCounterRepository.count() == 0) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recomputes every counter from the log table and the daily summaries and repairs the ones that drifted.
+     * <p>
+     * Lockers are reconciled in id ranges, each in its own transaction. The counter table is locked
+     * before a range is counted, so no increment can commit between counting its logs and writing
+     * the repaired totals. Writers of locker logs only wait while one range is counted.
+     */
+    @Scheduled(cron = "0 0 4 * * *")
+    public void reconcile() {
+        Long maxLockerId = lockerReadRepository.findMaxId();
+        if (maxLockerId == null) {
+            return;
+        }
+        int repaired = 0;
+        for (long from = 0; from <= maxLockerId; from += batchSize) {
+            long fromLockerId = from;
+            Integer rangeRepaired = transactionTemplate.execute(status -> reconcile(fromLockerId, fromLockerId + batchSize - 1));
+            repaired += rangeRepaired != null ? rangeRepaired : 0;
+        }
+        if (repaired > 0) {
+            log.warn(String.format("Repaired %d locker log counters", repaired));
+            cabinetVersions.lockerListsChanged();
+        }
+    }
+
+    private int reconcile(Long fromLockerId, Long toLockerId) {
+        lockerLogCounterRepository.lockForReconcile();
+        Map<Long, LockerLogCounter> expected = new HashMap<>();
+        for (LockerLogCounter counted : lockerLogRepository.countGroupedByLockerBetween(ECoop.LOCKER_STATE_INACTIVE, fromLockerId, toLockerId)) {
+            expected.put(counted.getLockerId(), counted);
+        }
+        for (LockerLogCounter summarized : lockerLogDailyRepository.countGroupedByLockerBetween(fromLockerId, toLockerId)) {
+            LockerLogCounter counted = expected.get(summarized.getLockerId());
+            if (counted == null) {
+                expected.put(summarized.getLockerId(), summarized);
+            } else {
+                counted.setTotalCount(counted.getTotalCount() + summarized.getTotalCount());
+                counted.setInactiveCount(counted.getInactiveCount() + summarized.getInactiveCount());
+                counted.setMaintenanceCount(counted.getMaintenanceCount() + summarized.getMaintenanceCount());
+                if (counted.getLastChangeAt() == null
+                        || (summarized.getLastChangeAt() != null && summarized.getLastChangeAt() > counted.getLastChangeAt())) {
+                    counted.setLastChangeAt(summarized.getLastChangeAt());
+                }
+            }
+        }
+        List<LockerLogCounter> repaired = new ArrayList<>();
+        for (LockerLogCounter counter : lockerLogCounterRepository.findAllByLockerIdBetween(fromLockerId, toLockerId)) {
+            LockerLogCounter counted = expected.remove(counter.getLockerId());
+            if (counted == null) {
+                counted = new LockerLogCounter(counter.getLockerId(), 0L, 0L, 0L, counter.getLastChangeAt());
+            }
+            if (!Objects.equals(counter.getTotalCount(), counted.getTotalCount())
+                    || !Objects.equals(counter.getInactiveCount(), counted.getInactiveCount())
+                    || !Objects.equals(counter.getMaintenanceCount(), counted.getMaintenanceCount())
+                    || !Objects.equals(counter.getLastChangeAt(), counted.getLastChangeAt())) {
+                counter.setTotalCount(counted.getTotalCount());
+                counter.setInactiveCount(counted.getInactiveCount());
+                counter.setMaintenanceCount(counted.getMaintenanceCount());
+                counter.setLastChangeAt(counted.getLastChangeAt());
+                repaired.add(counter);
+            }
+        }
+        // lockers with logs but without a counter row
+        repaired.addAll(expected.values());
+        lockerLogCounterRepository.saveAll(repaired);
+        return repaired.size();
+    }
+}
@@ -0,0 +1,84 @@
+package ee.coop.delivery.service;
+
+import ee.coop.ECoop;
+import ee.coop.delivery.domain.LockerLog;
+import ee.coop.delivery.domain.LockerLogDaily;
+import ee.coop.delivery.repository.LockerLogDailyRepository;
+import ee.coop.delivery.repository.LockerLogRepository;
+import ee.coop.utilites.DateTimeUtil;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Keeps the locker log table to the retention window. Rows from whole months past
+ * retention are rolled up into per locker daily summaries and removed, one day per transaction.
+ * Legacy rows without extCreatedAt cannot be placed on a day and are left alone.
+ */
+@Service
+public class LockerLogRetentionService {
+
+    private static final long DAY_MILLIS = 86400000L;
+
+    private final LockerLogRepository lockerLogRepository;
+    private final LockerLogDailyRepository lockerLogDailyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int retentionMonths;
+
+    private static final Logger log = LoggerFactory.getLogger(LockerLogRetentionService.class);
+
+    public LockerLogRetentionService(LockerLogRepository lockerLogRepository, LockerLogDailyRepository lockerLogDailyRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${delivery.locker-log.retention-months:12}") int retentionMonths) {
+        this.lockerLogRepository = lockerLogRepository;
+        this.lockerLogDailyRepository = lockerLogDailyRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retentionMonths = retentionMonths;
+    }
+
+    /**
+     * Every day is committed on its own, so locks and undo are held for one day of rows only.
+     * When a day fails the days before it stay rolled up and the next run starts again from it.
+     */
+    @Scheduled(cron = "0 30 2 1 * *")
+    public void rollUpExpiredLogs() {
+        // cut on a month boundary so that whole monthly partitions are emptied
+        long before = new DateTime(DateTimeUtil.currentDate()).minusMonths(retentionMonths).withDayOfMonth(1).getMillis();
+        LockerLog oldest = lockerLogRepository.findFirstByExtCreatedAtIsNotNullOrderByExtCreatedAtAsc();
+        if (oldest == null || oldest.getExtCreatedAt() >= before) {
+            return;
+        }
+
+        int days = 0;
+        int deleted = 0;
+        long from = oldest.getExtCreatedAt() - oldest.getExtCreatedAt() % DAY_MILLIS;
+        while (from < before) {
+            long dayFrom = from;
+            long to = Math.min(from + DAY_MILLIS, before);
+            Integer dayDeleted = transactionTemplate.execute(status -> rollUpDay(dayFrom, to));
+            if (dayDeleted != null && dayDeleted > 0) {
+                deleted += dayDeleted;
+                days++;
+            }
+            from = to;
+        }
+        log.info(String.format("Rolled up %d locker log rows of %d days into daily summaries", deleted, days));
+    }
+
+    private int rollUpDay(long from, long to) {
+        List<LockerLogDaily> summaries = lockerLogRepository.summarizeDaily(from, to, ECoop.LOCKER_STATE_INACTIVE);
+        if (summaries.isEmpty()) {
+            return 0;
+        }
+        lockerLogDailyRepository.saveAll(summaries);
+        // flushes the summaries and clears the context, so a long backlog does not pile up in memory
+        return lockerLogRepository.deleteAllByExtCreatedAtInRange(from, to);
+    }
+}
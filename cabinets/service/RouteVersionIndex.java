@@ -0,0 +1,48 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.domain.RouteVersion;
+import ee.coop.utilites.DateTimeUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Route versions indexed by the day they become valid, so the versions active on
+ * a given day can be resolved without going back to the database.
+ */
+class RouteVersionIndex {
+
+    private final NavigableMap<Long, List<Entry>> byValidFrom = new TreeMap<>();
+
+    RouteVersionIndex(List<RouteVersion> routeVersions) {
+        for (RouteVersion routeVersion : routeVersions) {
+            Long validFrom = DateTimeUtil.resetTime(routeVersion.getValidFrom());
+            Long validUntil = routeVersion.getValidUntil() != null ? DateTimeUtil.resetTime(routeVersion.getValidUntil()) : null;
+            byValidFrom.computeIfAbsent(validFrom, day -> new ArrayList<>()).add(new Entry(routeVersion, validUntil));
+        }
+    }
+
+    List<RouteVersion> activeOn(Long date) {
+        List<RouteVersion> active = new ArrayList<>();
+        for (List<Entry> entries : byValidFrom.headMap(date, true).values()) {
+            for (Entry entry : entries) {
+                if (entry.validUntil == null || entry.validUntil >= date) {
+                    active.add(entry.routeVersion);
+                }
+            }
+        }
+        return active;
+    }
+
+    private static class Entry {
+        private final RouteVersion routeVersion;
+        private final Long validUntil;
+
+        private Entry(RouteVersion routeVersion, Long validUntil) {
+            this.routeVersion = routeVersion;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ee.coop.delivery.service;
+
+import ee.coop.adapter.strongpoint.SpTerminalEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-process queue in front of {@link CabinetService#updateLockers(SpTerminalEvent)}.
+ * Only the latest snapshot per terminal is kept, older pending ones are replaced.
+ */
+@Service
+public class TerminalEventQueue {
+
+    private final CabinetService cabinetService;
+    private final int capacity;
+    private final ExecutorService workers;
+
+    private final ConcurrentHashMap<String, PendingEvent> pending = new ConcurrentHashMap<>();
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final AtomicLong drainLatencyMillis = new AtomicLong();
+
+    private static final Logger log = LoggerFactory.getLogger(TerminalEventQueue.class);
+
+    public TerminalEventQueue(CabinetService cabinetService,
+                              @Value("${delivery.terminal-queue.capacity:1000}") int capacity,
+                              @Value("${delivery.terminal-queue.workers:4}") int workers) {
+        this.cabinetService = cabinetService;
+        this.capacity = capacity;
+        this.workers = Executors.newFixedThreadPool(workers);
+    }
+
+    /**
+     * Accepts the event for asynchronous processing.
+     *
+     * @return false when the queue is full and the caller should retry later
+     */
+    public boolean offer(SpTerminalEvent event) {
+        String terminalId = event.getTerminalId();
+        PendingEvent next = new PendingEvent(event);
+        // replacing a pending event of the terminal takes no slot
+        if (pending.computeIfPresent(terminalId, (id, previous) -> next) != null) {
+            coalesced.incrementAndGet();
+        } else {
+            // the slot is reserved before the event is added, so depth never passes capacity
+            if (depth.getAndUpdate(current -> current < capacity ? current + 1 : current) >= capacity) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (pending.put(terminalId, next) != null) {
+                // another offer added the terminal in the meantime and holds its slot
+                depth.decrementAndGet();
+                coalesced.incrementAndGet();
+            }
+        }
+        received.incrementAndGet();
+        if (scheduled.add(terminalId)) {
+            workers.execute(() -> drain(terminalId));
+        }
+        return true;
+    }
+
+    private void drain(String terminalId) {
+        boolean released = false;
+        try {
+            while (true) {
+                PendingEvent next = pending.remove(terminalId);
+                if (next == null) {
+                    scheduled.remove(terminalId);
+                    // an event may have arrived between remove and release
+                    if (pending.containsKey(terminalId) && scheduled.add(terminalId)) {
+                        continue;
+                    }
+                    released = true;
+                    return;
+                }
+                depth.decrementAndGet();
+                try {
+                    cabinetService.updateLockers(next.event);
+                } catch (Exception e) {
+                    log.error("Failed to update lockers for terminal " + terminalId, e);
+                } catch (Error e) {
+                    log.error("Stopped draining terminal " + terminalId, e);
+                    throw e;
+                } finally {
+                    drained.incrementAndGet();
+                    drainLatencyMillis.addAndGet(System.currentTimeMillis() - next.enqueuedAt);
+                }
+            }
+        } finally {
+            if (!released) {
+                // an Error ends this drain, the terminal must not stay scheduled or its next events never run
+                scheduled.remove(terminalId);
+                if (pending.containsKey(terminalId) && scheduled.add(terminalId)) {
+                    workers.execute(() -> drain(terminalId));
+                }
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public double getCoalesceRatio() {
+        long total = received.get();
+        return total == 0 ? 0 : (double) coalesced.get() / total;
+    }
+
+    public double getAverageDrainLatencyMillis() {
+        long count = drained.get();
+        return count == 0 ? 0 : (double) drainLatencyMillis.get() / count;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getDrainedCount() {
+        return drained.get();
+    }
+
+    public long getDrainLatencyMillis() {
+        return drainLatencyMillis.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn(String.format("Terminal event queue stopped with %d pending events", depth.get()));
+            workers.shutdownNow();
+        }
+    }
+
+    private static class PendingEvent {
+        private final SpTerminalEvent event;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        private PendingEvent(SpTerminalEvent event) {
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ee.coop.delivery.service;
+
+import ee.coop.adapter.strongpoint.SpBox;
+import ee.coop.adapter.strongpoint.SpTerminalEvent;
+import ee.coop.delivery.domain.TerminalSnapshot;
+import ee.coop.delivery.repository.TerminalSnapshotRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fingerprints of the last terminal event applied per terminal: deleted flag, box disabled flags and
+ * temp modes. Most StrongPoint events repeat the previous one and are acknowledged from memory
+ * instead of a full apply. The persisted rows are shared by all instances, {@link #sync} drops every
+ * remembered fingerprint whose row was deleted or replaced on another instance, so such a change is
+ * seen here within one sync period. Fingerprints must be invalidated whenever lockers of the
+ * terminal are changed by anything else than its events.
+ */
+@Service
+public class TerminalSnapshotService {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final TerminalSnapshotRepository terminalSnapshotRepository;
+    private final ConcurrentHashMap<String, Long> fingerprints = new ConcurrentHashMap<>();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public TerminalSnapshotService(TerminalSnapshotRepository terminalSnapshotRepository) {
+        this.terminalSnapshotRepository = terminalSnapshotRepository;
+    }
+
+    @PostConstruct
+    public void preload() {
+        for (TerminalSnapshot snapshot : terminalSnapshotRepository.findAll()) {
+            fingerprints.put(snapshot.getTerminalId(), snapshot.getFingerprint());
+        }
+    }
+
+    /**
+     * @return true when the fingerprint equals the last applied one of the terminal
+     */
+    public boolean isUnchanged(String terminalId, long fingerprint) {
+        Long applied = fingerprints.get(terminalId);
+        if (applied == null || applied != fingerprint) {
+            return false;
+        }
+        skipped.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records the fingerprint in the current transaction, it is used for skipping once committed
+     */
+    public void applied(String terminalId, long fingerprint) {
+        terminalSnapshotRepository.upsert(terminalId, fingerprint, System.currentTimeMillis());
+        TransactionCallbacks.afterCommit(() -> fingerprints.put(terminalId, fingerprint));
+    }
+
+    /**
+     * Lockers of the terminal were changed manually, the next event of the terminal is applied in full
+     */
+    public void invalidate(String terminalId) {
+        if (terminalId == null) {
+            return;
+        }
+        fingerprints.remove(terminalId);
+        terminalSnapshotRepository.deleteByTerminalId(terminalId);
+        TransactionCallbacks.afterCommit(() -> fingerprints.remove(terminalId));
+    }
+
+    /**
+     * Reads every persisted fingerprint and forgets the remembered ones that no longer match their row.
+     * Nothing is ever added here: a row read before a local apply or invalidate commits could be stale,
+     * forgetting only costs one full apply while remembering a stale fingerprint would skip a change.
+     */
+    @Scheduled(fixedDelayString = "${delivery.terminal-snapshot.sync-millis:30000}")
+    public void sync() {
+        Map<String, Long> persisted = new HashMap<>();
+        for (TerminalSnapshot snapshot : terminalSnapshotRepository.findAll()) {
+            persisted.put(snapshot.getTerminalId(), snapshot.getFingerprint());
+        }
+        for (Map.Entry<String, Long> entry : fingerprints.entrySet()) {
+            if (!entry.getValue().equals(persisted.get(entry.getKey())) && fingerprints.remove(entry.getKey(), entry.getValue())) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 64-bit FNV-1a over the deleted flag and every box in event order. A reordered but otherwise
+     * equal event only costs one full apply.
+     */
+    public static long fingerprint(SpTerminalEvent event) {
+        long hash = mix(FNV_OFFSET, Boolean.TRUE.equals(event.getIsDeleted()) ? 1 : 0);
+        if (event.getBoxes() == null) {
+            return hash;
+        }
+        for (SpBox box : event.getBoxes()) {
+            hash = mix(hash, Objects.hashCode(box.getBoxIndex()));
+            hash = mix(hash, Boolean.TRUE.equals(box.getIsDisabled()) ? 1 : 0);
+            hash = mix(hash, Objects.hashCode(box.getTempMode()));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
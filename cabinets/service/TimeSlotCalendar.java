@@ -0,0 +1,379 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.domain.RouteVersion;
+import ee.coop.delivery.domain.TimeSlotConfig;
+import ee.coop.delivery.domain.TimeSlotInstance;
+import ee.coop.delivery.domain.TimeSlotsPerDay;
+import ee.coop.delivery.repository.RouteVersionRepository;
+import ee.coop.delivery.repository.TimeSlotConfigReadRepository;
+import ee.coop.delivery.repository.TimeSlotConfigRepository;
+import ee.coop.utilites.DateTimeUtil;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time slots of the next days per cabinet. The slot template of a cabinet is built once from its
+ * time slot configs and route versions and rolled forward at midnight, reads only overlay the
+ * live capacity from {@link TimeSlotCapacity}.
+ */
+@Service
+public class TimeSlotCalendar {
+
+    public static final String STATUS_AVAILABLE = "TIME_SLOT_STATUS_AVAILABLE";
+    public static final String STATUS_UNAVAILABLE = "TIME_SLOT_STATUS_UNAVAILABLE";
+
+    private final TimeSlotConfigRepository timeSlotConfigRepository;
+    private final TimeSlotConfigReadRepository timeSlotConfigReadRepository;
+    private final RouteVersionRepository routeVersionRepository;
+    private final TimeSlotCapacity timeSlotCapacity;
+    private final int horizonDays;
+
+    private final ConcurrentHashMap<Long, CabinetCalendar> calendars = new ConcurrentHashMap<>();
+    // bumped on every change, a build that overlaps a change is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    public TimeSlotCalendar(TimeSlotConfigRepository timeSlotConfigRepository, TimeSlotConfigReadRepository timeSlotConfigReadRepository,
+                            RouteVersionRepository routeVersionRepository, TimeSlotCapacity timeSlotCapacity,
+                            @Value("${delivery.time-slot.calendar-days:14}") int horizonDays) {
+        this.timeSlotConfigRepository = timeSlotConfigRepository;
+        this.timeSlotConfigReadRepository = timeSlotConfigReadRepository;
+        this.routeVersionRepository = routeVersionRepository;
+        this.timeSlotCapacity = timeSlotCapacity;
+        this.horizonDays = horizonDays;
+    }
+
+    /**
+     * Time slots of the given number of days starting from today, one entry per day.
+     * Days past the calendar window are not served, the count is capped at the window size.
+     */
+    public List<TimeSlotsPerDay> getTimeSlotsForPeriod(Long cabinetId, int days) {
+        if (days <= 0) {
+            return new ArrayList<>();
+        }
+        days = Math.min(days, horizonDays);
+        CabinetCalendar calendar = calendarFor(cabinetId, DateTimeUtil.currentDate());
+        List<Day> requested = calendar.days.subList(0, Math.min(days, calendar.days.size()));
+        seedCapacity(calendar.configIds, requested.get(0).date, requested.get(requested.size() - 1).date);
+        return overlay(requested);
+    }
+
+    /**
+     * Time slots of many cabinets between from and to, both inclusive and limited to the calendar window.
+     * Calendars missing from the cache are built together, so the whole matrix costs at most
+     * one config query, one route version query and one delivery count query.
+     */
+    public Map<Long, List<TimeSlotsPerDay>> getTimeSlotsForCabinets(Collection<Long> cabinetIds, Long from, Long to) {
+        Long today = DateTimeUtil.currentDate();
+        Long horizonEnd = new DateTime(today).plusDays(horizonDays - 1).getMillis();
+        Long firstDay = from != null && from > today ? DateTimeUtil.resetTime(from) : today;
+        Long lastDay = to != null && to < horizonEnd ? to : horizonEnd;
+
+        Map<Long, CabinetCalendar> selected = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long cabinetId : new LinkedHashSet<>(cabinetIds)) {
+            CabinetCalendar calendar = calendars.get(cabinetId);
+            if (calendar == null) {
+                missing.add(cabinetId);
+            } else {
+                selected.put(cabinetId, calendar.firstDay.equals(today) ? calendar : calendarFor(cabinetId, today));
+            }
+        }
+        if (!missing.isEmpty()) {
+            selected.putAll(buildAll(missing, today));
+        }
+
+        Map<Long, List<Day>> requested = new LinkedHashMap<>();
+        Set<Long> configIds = new LinkedHashSet<>();
+        for (Long cabinetId : cabinetIds) {
+            CabinetCalendar calendar = selected.get(cabinetId);
+            List<Day> days = new ArrayList<>();
+            for (Day day : calendar.days) {
+                if (day.date >= firstDay && day.date <= lastDay) {
+                    days.add(day);
+                }
+            }
+            requested.put(cabinetId, days);
+            configIds.addAll(calendar.configIds);
+        }
+        // one grouped count for every cabinet
+        seedCapacity(configIds, firstDay, lastDay);
+
+        Map<Long, List<TimeSlotsPerDay>> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<Day>> entry : requested.entrySet()) {
+            result.put(entry.getKey(), overlay(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Must be called after time slot configs of the cabinet were added, edited or removed
+     */
+    public void timeSlotConfigsChanged(Long cabinetId) {
+        generation.incrementAndGet();
+        calendars.remove(cabinetId);
+    }
+
+    /**
+     * Must be called after route versions were edited, every calendar may depend on them
+     */
+    public void routeVersionsChanged() {
+        generation.incrementAndGet();
+        calendars.clear();
+    }
+
+    /**
+     * Fallback for config and route version edits that were not reported, e.g. made on another
+     * instance. Calendars are dropped and rebuilt on their next read.
+     */
+    @Scheduled(fixedDelayString = "${delivery.time-slot.calendar-reload-millis:600000}")
+    public void expireCalendars() {
+        routeVersionsChanged();
+    }
+
+    @Scheduled(cron = "0 0 0 * * *")
+    public void rollForward() {
+        Long today = DateTimeUtil.currentDate();
+        for (Map.Entry<Long, CabinetCalendar> entry : calendars.entrySet()) {
+            calendars.replace(entry.getKey(), entry.getValue(), entry.getValue().rolledTo(today, horizonDays));
+        }
+    }
+
+    public long getBuildCount() {
+        return builds.get();
+    }
+
+    private CabinetCalendar calendarFor(Long cabinetId, Long today) {
+        CabinetCalendar calendar = calendars.get(cabinetId);
+        if (calendar != null) {
+            if (calendar.firstDay.equals(today)) {
+                return calendar;
+            }
+            CabinetCalendar rolled = calendar.rolledTo(today, horizonDays);
+            calendars.replace(cabinetId, calendar, rolled);
+            return rolled;
+        }
+        long expectedGeneration = generation.get();
+        calendar = build(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(cabinetId), today, horizonDays);
+        if (generation.get() == expectedGeneration) {
+            calendars.putIfAbsent(cabinetId, calendar);
+        }
+        return calendar;
+    }
+
+    private Map<Long, CabinetCalendar> buildAll(List<Long> cabinetIds, Long today) {
+        long expectedGeneration = generation.get();
+        List<TimeSlotConfig> timeSlotConfigs = timeSlotConfigReadRepository.findAllByCabinetIdInOrderByStartTime(cabinetIds);
+        Map<Long, List<TimeSlotConfig>> configsByCabinet = new HashMap<>();
+        for (TimeSlotConfig timeSlotConfig : timeSlotConfigs) {
+            configsByCabinet.computeIfAbsent(timeSlotConfig.getCabinet().getId(), id -> new ArrayList<>()).add(timeSlotConfig);
+        }
+        Map<Long, RouteVersion> routeVersions = findRouteVersions(timeSlotConfigs);
+        Map<Long, CabinetCalendar> built = new HashMap<>();
+        for (Long cabinetId : cabinetIds) {
+            List<TimeSlotConfig> cabinetConfigs = configsByCabinet.getOrDefault(cabinetId, Collections.emptyList());
+            builds.incrementAndGet();
+            CabinetCalendar calendar = new CabinetCalendar(toTemplates(cabinetConfigs), routeVersions, today, horizonDays);
+            if (generation.get() == expectedGeneration) {
+                calendars.putIfAbsent(cabinetId, calendar);
+            }
+            built.put(cabinetId, calendar);
+        }
+        return built;
+    }
+
+    private CabinetCalendar build(List<TimeSlotConfig> timeSlotConfigs, Long today, int days) {
+        builds.incrementAndGet();
+        return new CabinetCalendar(toTemplates(timeSlotConfigs), findRouteVersions(timeSlotConfigs), today, days);
+    }
+
+    private List<SlotTemplate> toTemplates(List<TimeSlotConfig> timeSlotConfigs) {
+        List<SlotTemplate> templates = new ArrayList<>(timeSlotConfigs.size());
+        for (TimeSlotConfig timeSlotConfig : timeSlotConfigs) {
+            templates.add(new SlotTemplate(timeSlotConfig));
+        }
+        return templates;
+    }
+
+    private Map<Long, RouteVersion> findRouteVersions(List<TimeSlotConfig> timeSlotConfigs) {
+        Set<Long> routeVersionIds = new LinkedHashSet<>();
+        for (TimeSlotConfig timeSlotConfig : timeSlotConfigs) {
+            if (timeSlotConfig.getRouteVersionId() != null) {
+                routeVersionIds.add(timeSlotConfig.getRouteVersionId());
+            }
+        }
+        Map<Long, RouteVersion> routeVersions = new HashMap<>();
+        if (!routeVersionIds.isEmpty()) {
+            for (RouteVersion routeVersion : routeVersionRepository.findAllById(routeVersionIds)) {
+                routeVersions.put(routeVersion.getId(), routeVersion);
+            }
+        }
+        return routeVersions;
+    }
+
+    private void seedCapacity(Set<Long> configIds, Long from, Long to) {
+        if (!configIds.isEmpty() && from <= to) {
+            timeSlotCapacity.seed(configIds, from, to);
+        }
+    }
+
+    private List<TimeSlotsPerDay> overlay(List<Day> requested) {
+        List<TimeSlotsPerDay> result = new ArrayList<>(requested.size());
+        for (Day day : requested) {
+            List<TimeSlotInstance> instances = new ArrayList<>(day.slots.size());
+            for (DaySlot slot : day.slots) {
+                SlotTemplate template = slot.template;
+                instances.add(slot.toInstance(timeSlotCapacity.isAvailable(template.timeSlotConfigId, template.maxOrders, day.date)));
+            }
+            TimeSlotsPerDay timeSlotsPerDay = new TimeSlotsPerDay();
+            timeSlotsPerDay.setDate(day.date);
+            timeSlotsPerDay.setTimeSlots(instances);
+            result.add(timeSlotsPerDay);
+        }
+        return result;
+    }
+
+    /**
+     * Immutable slot template of one cabinet for a window of days
+     */
+    private static class CabinetCalendar {
+        private final List<SlotTemplate> templates;
+        private final Map<Long, RouteVersion> routeVersions;
+        private final Set<Long> configIds = new LinkedHashSet<>();
+        private final Long firstDay;
+        private final List<Day> days;
+
+        private CabinetCalendar(List<SlotTemplate> templates, Map<Long, RouteVersion> routeVersions, Long firstDay, int dayCount) {
+            this(templates, routeVersions, firstDay, Collections.emptyList(), dayCount);
+        }
+
+        private CabinetCalendar(List<SlotTemplate> templates, Map<Long, RouteVersion> routeVersions, Long firstDay,
+                                List<Day> reusable, int dayCount) {
+            this.templates = templates;
+            this.routeVersions = routeVersions;
+            this.firstDay = firstDay;
+            for (SlotTemplate template : templates) {
+                configIds.add(template.timeSlotConfigId);
+            }
+            Map<Long, Day> reusableByDate = new HashMap<>();
+            for (Day day : reusable) {
+                reusableByDate.put(day.date, day);
+            }
+            List<Day> days = new ArrayList<>(dayCount);
+            DateTime date = new DateTime(firstDay);
+            for (int i = 0; i < dayCount; i++, date = date.plusDays(1)) {
+                Day day = reusableByDate.get(date.getMillis());
+                days.add(day != null ? day : buildDay(date.getMillis()));
+            }
+            this.days = Collections.unmodifiableList(days);
+        }
+
+        private CabinetCalendar rolledTo(Long today, int dayCount) {
+            return new CabinetCalendar(templates, routeVersions, today, days, dayCount);
+        }
+
+        private Day buildDay(Long date) {
+            List<DaySlot> slots = new ArrayList<>();
+            DateTime day = new DateTime(date);
+            for (SlotTemplate template : templates) {
+                if (isValidByRoute(template, date)) {
+                    slots.add(new DaySlot(template, day));
+                }
+            }
+            return new Day(date, Collections.unmodifiableList(slots));
+        }
+
+        private boolean isValidByRoute(SlotTemplate template, Long date) {
+            if (template.routeVersionId == null) {
+                return true;
+            }
+            RouteVersion routeVersion = routeVersions.get(template.routeVersionId);
+            if (routeVersion == null || routeVersion.getValidFrom() == null) {
+                return false;
+            }
+            // whole days, as in RouteVersionIndex
+            return DateTimeUtil.resetTime(routeVersion.getValidFrom()) <= date
+                    && (routeVersion.getValidUntil() == null || date <= DateTimeUtil.resetTime(routeVersion.getValidUntil()));
+        }
+    }
+
+    private static class Day {
+        private final Long date;
+        private final List<DaySlot> slots;
+
+        private Day(Long date, List<DaySlot> slots) {
+            this.date = date;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * A slot template placed on one day, the config times are kept as time of day only
+     */
+    private static class DaySlot {
+        private final SlotTemplate template;
+        private final Long startTime;
+        private final Long endTime;
+
+        private DaySlot(SlotTemplate template, DateTime day) {
+            this.template = template;
+            this.startTime = onDay(day, template.startTime);
+            Long end = onDay(day, template.endTime);
+            // a slot ending past midnight ends on the next day
+            this.endTime = end != null && startTime != null && end < startTime ? new DateTime(end).plusDays(1).getMillis() : end;
+        }
+
+        private static Long onDay(DateTime day, Long time) {
+            if (time == null) {
+                return null;
+            }
+            return day.withMillisOfDay(new DateTime(time).getMillisOfDay()).getMillis();
+        }
+
+        private TimeSlotInstance toInstance(boolean available) {
+            TimeSlotInstance timeSlotInstance = new TimeSlotInstance();
+            timeSlotInstance.setTimeSlotConfigId(template.timeSlotConfigId);
+            timeSlotInstance.setDeliveryFee(template.deliveryFee);
+            timeSlotInstance.setStartTime(startTime);
+            timeSlotInstance.setEndTime(endTime);
+            timeSlotInstance.setStatus(available ? STATUS_AVAILABLE : STATUS_UNAVAILABLE);
+            return timeSlotInstance;
+        }
+    }
+
+    /**
+     * The parts of a time slot config needed to render an instance, detached from the entity
+     */
+    private static class SlotTemplate {
+        private final Long timeSlotConfigId;
+        private final Long routeVersionId;
+        private final Long startTime;
+        private final Long endTime;
+        private final BigDecimal deliveryFee;
+        private final Integer maxOrders;
+
+        private SlotTemplate(TimeSlotConfig timeSlotConfig) {
+            this.timeSlotConfigId = timeSlotConfig.getId();
+            this.routeVersionId = timeSlotConfig.getRouteVersionId();
+            this.startTime = timeSlotConfig.getStartTime();
+            this.endTime = timeSlotConfig.getEndTime();
+            this.deliveryFee = timeSlotConfig.getDeliveryFee();
+            this.maxOrders = timeSlotConfig.getMaxOrders();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.domain.TimeSlotConfig;
+import ee.coop.delivery.dto.TimeSlotBookingCount;
+import ee.coop.delivery.repository.DeliveryReadRepository;
+import ee.coop.delivery.repository.TimeSlotTakenRepository;
+import ee.coop.utilites.DateTimeUtil;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory booked delivery counts per (delivery date, time slot config).
+ * Counters are seeded from the database with one grouped query per window,
+ * kept current by {@link #deliveryCreated} and {@link #deliveryCancelled} and periodically
+ * corrected by {@link #reseed}, which also picks up bookings made by other instances.
+ * <p>
+ * Checkout takes capacity with {@link #hold}, which is a compare-and-set against max orders.
+ * Counters and holds are per instance, so holds only keep concurrent checkouts of one instance
+ * from overbooking. The limit itself is enforced by {@link #confirm}, which takes the place on a
+ * shared (delivery date, time slot) row with a conditional update, so instances cannot oversell
+ * each other and checkouts of other days or slots never wait on it.
+ * A hold is turned into a booking with {@link #confirm} or given back with {@link #release},
+ * abandoned holds expire on their own.
+ */
+@Service
+public class TimeSlotCapacity {
+
+    private final DeliveryReadRepository deliveryReadRepository;
+    private final TimeSlotTakenRepository timeSlotTakenRepository;
+    private final long holdMillis;
+    private final List<String> releasedStatuses;
+    private final ConcurrentHashMap<SlotKey, SlotCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Hold> holds = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejectedHolds = new AtomicLong();
+    private final AtomicLong expiredHolds = new AtomicLong();
+    private final AtomicLong oversoldHolds = new AtomicLong();
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSlotCapacity.class);
+
+    public TimeSlotCapacity(DeliveryReadRepository deliveryReadRepository, TimeSlotTakenRepository timeSlotTakenRepository,
+                            @Value("${delivery.time-slot.hold-seconds:600}") long holdSeconds,
+                            @Value("${delivery.time-slot.released-statuses:DELIVERY_STATUS_CANCELLED}") String[] releasedStatuses) {
+        this.deliveryReadRepository = deliveryReadRepository;
+        this.timeSlotTakenRepository = timeSlotTakenRepository;
+        this.holdMillis = holdSeconds * 1000;
+        this.releasedStatuses = Arrays.asList(releasedStatuses);
+    }
+
+    /**
+     * Loads counters for every given config on every day between from and to, both inclusive.
+     * Days that are already tracked are left untouched.
+     * <p>
+     * Counters are installed before the database is read, so deliveries committed while seeding are
+     * counted on top of the loaded counts instead of being lost. A change committed just before the
+     * read whose commit callback runs just after it is applied twice: a created delivery is counted
+     * twice and a cancelled one subtracted twice, so a fresh counter can be off in either direction.
+     * Such drift lasts until the next {@link #reseed}, the limit itself is enforced by {@link #confirm}.
+     */
+    public void seed(Collection<Long> timeSlotConfigIds, Long from, Long to) {
+        List<Long> days = daysBetween(from, to);
+        Map<SlotKey, SlotCounter> installed = new HashMap<>();
+        Set<Long> missingConfigIds = new LinkedHashSet<>();
+        for (Long configId : timeSlotConfigIds) {
+            for (Long day : days) {
+                SlotKey key = new SlotKey(day, configId);
+                SlotCounter counter = new SlotCounter();
+                if (counters.putIfAbsent(key, counter) == null) {
+                    installed.put(key, counter);
+                    missingConfigIds.add(configId);
+                }
+            }
+        }
+        if (installed.isEmpty()) {
+            return;
+        }
+        Map<SlotKey, Long> counts = new HashMap<>();
+        try {
+            for (TimeSlotBookingCount count : deliveryReadRepository.countBookingsByDateAndTimeSlot(missingConfigIds, from, to, releasedStatuses)) {
+                counts.put(new SlotKey(count.getDate(), count.getTimeSlotConfigId()), count.getCount());
+            }
+        } catch (RuntimeException e) {
+            for (Map.Entry<SlotKey, SlotCounter> entry : installed.entrySet()) {
+                counters.remove(entry.getKey(), entry.getValue());
+                entry.getValue().failed = true;
+                entry.getValue().seeded.countDown();
+            }
+            throw e;
+        }
+        for (Map.Entry<SlotKey, SlotCounter> entry : installed.entrySet()) {
+            long count = counts.getOrDefault(entry.getKey(), 0L);
+            entry.getValue().taken.addAndGet(count);
+            entry.getValue().booked.addAndGet(count);
+            entry.getValue().seeded.countDown();
+        }
+    }
+
+    public long getBookedCount(Long date, Long timeSlotConfigId) {
+        return counter(date, timeSlotConfigId).booked.get();
+    }
+
+    public long getHeldCount(Long date, Long timeSlotConfigId) {
+        return counter(date, timeSlotConfigId).held.get();
+    }
+
+    /**
+     * True while bookings and open holds stay below max orders, a slot without a limit is always available
+     */
+    public boolean isAvailable(TimeSlotConfig timeSlotConfig, Long date) {
+        return isAvailable(timeSlotConfig.getId(), timeSlotConfig.getMaxOrders(), date);
+    }
+
+    public boolean isAvailable(Long timeSlotConfigId, Integer maxOrders, Long date) {
+        if (maxOrders == null) {
+            return true;
+        }
+        return counter(date, timeSlotConfigId).taken.get() < maxOrders;
+    }
+
+    /**
+     * Takes one unit of capacity for the checkout in progress.
+     *
+     * @return hold id to confirm or release later, null when the slot is full
+     */
+    public String hold(TimeSlotConfig timeSlotConfig, Long date) {
+        SlotCounter counter = counter(date, timeSlotConfig.getId());
+        Integer maxOrders = timeSlotConfig.getMaxOrders();
+        while (true) {
+            long taken = counter.taken.get();
+            if (maxOrders != null && taken >= maxOrders) {
+                rejectedHolds.incrementAndGet();
+                return null;
+            }
+            if (counter.taken.compareAndSet(taken, taken + 1)) {
+                break;
+            }
+        }
+        counter.held.incrementAndGet();
+        String holdId = UUID.randomUUID().toString();
+        holds.put(holdId, new Hold(new SlotKey(date, timeSlotConfig.getId()), maxOrders, System.currentTimeMillis() + holdMillis));
+        return holdId;
+    }
+
+    /**
+     * Turns the hold into a booking. Must be called instead of {@link #deliveryCreated} by the
+     * transaction that creates the delivery, before the delivery is inserted. For limited slots the
+     * place is taken on the shared capacity row of that day, which only stays locked until that
+     * transaction ends. The capacity is given back if the transaction rolls back.
+     *
+     * @return false when the hold is unknown or has expired, or the slot was filled by another
+     * instance, the delivery must not be created then
+     */
+    public boolean confirm(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            return false;
+        }
+        SlotCounter counter = counters.get(hold.key);
+        if (counter == null) {
+            return false;
+        }
+        counter.held.decrementAndGet();
+        if (hold.expiresAt <= System.currentTimeMillis()) {
+            counter.taken.decrementAndGet();
+            expiredHolds.incrementAndGet();
+            return false;
+        }
+        if (hold.maxOrders != null && !takeInDatabase(hold)) {
+            counter.taken.decrementAndGet();
+            oversoldHolds.incrementAndGet();
+            return false;
+        }
+        TransactionCallbacks.afterCompletion(counter.booked::incrementAndGet, counter.taken::decrementAndGet);
+        return true;
+    }
+
+    /**
+     * Gives the held capacity back, for abandoned or failed checkouts
+     */
+    public void release(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold != null) {
+            giveBack(hold);
+        }
+    }
+
+    @Scheduled(fixedDelay = 30000)
+    public void sweepExpiredHolds() {
+        long now = System.currentTimeMillis();
+        int swept = 0;
+        for (Map.Entry<String, Hold> entry : holds.entrySet()) {
+            if (entry.getValue().expiresAt <= now && holds.remove(entry.getKey(), entry.getValue())) {
+                giveBack(entry.getValue());
+                expiredHolds.incrementAndGet();
+                swept++;
+            }
+        }
+        if (swept > 0) {
+            log.info(String.format("Released %d expired time slot holds", swept));
+        }
+    }
+
+    /**
+     * Recounts every tracked counter with one grouped query and corrects its committed bookings,
+     * open holds and bookings still being committed are kept. Brings in deliveries created or cancelled by other instances and removes
+     * the drift of changes that were committing while a counter was seeded or recounted.
+     */
+    @Scheduled(fixedDelayString = "${delivery.time-slot.reseed-millis:300000}")
+    public void reseed() {
+        Map<SlotKey, SlotCounter> tracked = new HashMap<>();
+        Set<Long> configIds = new LinkedHashSet<>();
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (Map.Entry<SlotKey, SlotCounter> entry : counters.entrySet()) {
+            // counters still being seeded get their count from that seed
+            if (entry.getValue().seeded.getCount() == 0) {
+                tracked.put(entry.getKey(), entry.getValue());
+                configIds.add(entry.getKey().timeSlotConfigId);
+                from = Math.min(from, entry.getKey().date);
+                to = Math.max(to, entry.getKey().date);
+            }
+        }
+        if (tracked.isEmpty()) {
+            return;
+        }
+        Map<SlotKey, Long> counts = new HashMap<>();
+        for (TimeSlotBookingCount count : deliveryReadRepository.countBookingsByDateAndTimeSlot(configIds, from, to, releasedStatuses)) {
+            counts.put(new SlotKey(count.getDate(), count.getTimeSlotConfigId()), count.getCount());
+        }
+        int corrected = 0;
+        for (Map.Entry<SlotKey, SlotCounter> entry : tracked.entrySet()) {
+            SlotCounter counter = entry.getValue();
+            long drift = counts.getOrDefault(entry.getKey(), 0L) - counter.booked.get();
+            if (drift != 0) {
+                counter.booked.addAndGet(drift);
+                counter.taken.addAndGet(drift);
+                corrected++;
+            }
+        }
+        if (corrected > 0) {
+            log.info(String.format("Corrected %d time slot counters from the database", corrected));
+        }
+    }
+
+    public long getRejectedHoldCount() {
+        return rejectedHolds.get();
+    }
+
+    public long getExpiredHoldCount() {
+        return expiredHolds.get();
+    }
+
+    public long getOversoldHoldCount() {
+        return oversoldHolds.get();
+    }
+
+    /**
+     * Counts a new delivery once the surrounding transaction has committed
+     */
+    public void deliveryCreated(Long date, Long timeSlotConfigId) {
+        TransactionCallbacks.afterCommit(() -> adjust(date, timeSlotConfigId, 1));
+    }
+
+    /**
+     * Releases a cancelled delivery. Must be called by the transaction that cancels it, the shared
+     * capacity row is given back with that transaction and the counter once it has committed.
+     */
+    public void deliveryCancelled(Long date, Long timeSlotConfigId) {
+        timeSlotTakenRepository.giveBack(date, timeSlotConfigId);
+        TransactionCallbacks.afterCommit(() -> adjust(date, timeSlotConfigId, -1));
+    }
+
+    /**
+     * Drops counters and capacity rows of past days, they are never asked for again
+     */
+    @Scheduled(cron = "0 5 0 * * *")
+    public void evictPastDays() {
+        Long today = DateTimeUtil.currentDate();
+        counters.keySet().removeIf(key -> key.date < today);
+        timeSlotTakenRepository.deleteAllBefore(today);
+    }
+
+    public void reset() {
+        counters.clear();
+        holds.clear();
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private SlotCounter counter(Long date, Long timeSlotConfigId) {
+        SlotKey key = new SlotKey(date, timeSlotConfigId);
+        while (true) {
+            SlotCounter counter = counters.get(key);
+            if (counter == null) {
+                seed(Collections.singletonList(timeSlotConfigId), date, date);
+                continue;
+            }
+            // another thread is still seeding it, its count is not complete yet
+            if (counter.awaitSeeded()) {
+                return counter;
+            }
+        }
+    }
+
+    private void adjust(Long date, Long timeSlotConfigId, int delta) {
+        // untracked slots are seeded from the database on first read and already include this delivery,
+        // slots being seeded take the delta on top of the count they are about to load
+        SlotCounter counter = counters.get(new SlotKey(date, timeSlotConfigId));
+        if (counter != null) {
+            counter.taken.addAndGet(delta);
+            counter.booked.addAndGet(delta);
+        }
+    }
+
+    private boolean takeInDatabase(Hold hold) {
+        Long date = hold.key.date;
+        Long timeSlotConfigId = hold.key.timeSlotConfigId;
+        if (timeSlotTakenRepository.take(date, timeSlotConfigId, hold.maxOrders) > 0) {
+            return true;
+        }
+        // full, or the first booking of the day: start the row from the committed deliveries,
+        // when another instance starts it at the same time its row wins and this insert does nothing
+        long booked = 0;
+        for (TimeSlotBookingCount count : deliveryReadRepository.countBookingsByDateAndTimeSlot(
+                Collections.singletonList(timeSlotConfigId), date, date, releasedStatuses)) {
+            booked += count.getCount();
+        }
+        timeSlotTakenRepository.insertIfAbsent(date, timeSlotConfigId, booked);
+        return timeSlotTakenRepository.take(date, timeSlotConfigId, hold.maxOrders) > 0;
+    }
+
+    private void giveBack(Hold hold) {
+        SlotCounter counter = counters.get(hold.key);
+        if (counter != null) {
+            counter.held.decrementAndGet();
+            counter.taken.decrementAndGet();
+        }
+    }
+
+    private static List<Long> daysBetween(Long from, Long to) {
+        List<Long> days = new ArrayList<>();
+        for (DateTime day = new DateTime(from); day.getMillis() <= to; day = day.plusDays(1)) {
+            days.add(day.getMillis());
+        }
+        return days;
+    }
+
+    private static class SlotCounter {
+        // bookings plus open holds, the only value compared with max orders
+        private final AtomicLong taken = new AtomicLong();
+        private final AtomicLong held = new AtomicLong();
+        // committed bookings only, what reseed compares with the database
+        private final AtomicLong booked = new AtomicLong();
+        private final CountDownLatch seeded = new CountDownLatch(1);
+        private volatile boolean failed;
+
+        /**
+         * @return false when seeding failed and the counter was dropped
+         */
+        private boolean awaitSeeded() {
+            boolean interrupted = false;
+            while (seeded.getCount() > 0) {
+                try {
+                    seeded.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return !failed;
+        }
+    }
+
+    private static class Hold {
+        private final SlotKey key;
+        private final Integer maxOrders;
+        private final long expiresAt;
+
+        private Hold(SlotKey key, Integer maxOrders, long expiresAt) {
+            this.key = key;
+            this.maxOrders = maxOrders;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class SlotKey {
+        private final long date;
+        private final long timeSlotConfigId;
+
+        private SlotKey(Long date, Long timeSlotConfigId) {
+            this.date = date;
+            this.timeSlotConfigId = timeSlotConfigId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SlotKey)) {
+                return false;
+            }
+            SlotKey other = (SlotKey) o;
+            return date == other.date && timeSlotConfigId == other.timeSlotConfigId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, timeSlotConfigId);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ee.coop.delivery.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CabinetListFanOutTest {
+
+    private static final int CABINETS = 64;
+
+    private final List<CabinetListFanOut> fanOuts = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        fanOuts.forEach(CabinetListFanOut::shutdown);
+    }
+
+    private CabinetListFanOut createFanOut(int parallelism, long timeoutMillis, boolean partialResults) {
+        CabinetListFanOut fanOut = new CabinetListFanOut(parallelism, timeoutMillis, partialResults);
+        fanOuts.add(fanOut);
+        return fanOut;
+    }
+
+    private List<Long> cabinetIds() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= CABINETS; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    // the first rows wait until the given number of rows run at once
+    private Function<Long, Long> concurrentRow(CountDownLatch started, AtomicInteger inFlight, AtomicInteger maxInFlight) {
+        return id -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            started.countDown();
+            try {
+                started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return id;
+        };
+    }
+
+    // ignores interrupts, so it keeps running after its timeout like a blocked repository call
+    private Function<Long, Long> stuckRow(CountDownLatch release, CountDownLatch finished) {
+        return id -> {
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException ignored) {
+                    // keep waiting
+                }
+            }
+            finished.countDown();
+            return id;
+        };
+    }
+
+    @Test
+    public void testParallelRunsRowsConcurrently() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Long> collected = new ArrayList<>();
+
+        assertTrue(createFanOut(8, 10000, true).forEach(cabinetIds(),
+                concurrentRow(new CountDownLatch(8), inFlight, maxInFlight), collected::add));
+
+        assertEquals(8, maxInFlight.get());
+        assertEquals(cabinetIds(), collected);
+    }
+
+    @Test
+    public void testSequentialRunsOneRowAtATime() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Long> collected = new ArrayList<>();
+
+        assertTrue(createFanOut(1, 10000, true).forEach(cabinetIds(),
+                concurrentRow(new CountDownLatch(1), inFlight, maxInFlight), collected::add));
+
+        assertEquals(1, maxInFlight.get());
+        assertEquals(CABINETS, collected.size());
+    }
+
+    @Test
+    public void testTimedOutRowsAreNotCollectedAfterReturn() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        List<Long> collected = new CopyOnWriteArrayList<>();
+
+        assertFalse(createFanOut(2, 50, true).forEach(cabinetIds(), stuckRow(release, finished), collected::add));
+        assertTrue(collected.isEmpty());
+
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(collected.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTimeoutWithoutPartialResultFails() {
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            createFanOut(2, 50, false).forEach(cabinetIds(), stuckRow(release, new CountDownLatch(2)), id -> { });
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -6,11 +6,17 @@ import ee.coop.core.domain.Classifier;
 import ee.coop.core.domain.UserCabinet;
 import ee.coop.core.repository.ClassifierRepository;
 import ee.coop.core.repository.UserCabinetRepository;
+import ee.coop.core.service.ClassifierRegistry;
 import ee.coop.delivery.domain.*;
 import ee.coop.delivery.dto.CabinetListRow;
 import ee.coop.delivery.dto.CabinetLogRow;
 import ee.coop.delivery.dto.LockerDetails;
+import ee.coop.delivery.dto.LockerLogEntry;
 import ee.coop.delivery.dto.LockerLogUpdate;
+import ee.coop.delivery.dto.LockerRow;
+import ee.coop.delivery.dto.LockerStateEvent;
+import ee.coop.delivery.dto.LockerStatusUpdate;
+import ee.coop.delivery.dto.LockerStatusUpdateResult;
 import ee.coop.delivery.repository.*;
 import ee.coop.erp.domain.Store;
 import ee.coop.erp.repository.OrderRepository;
@@ -18,19 +24,32 @@ import ee.coop.erp.repository.StoreRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ActiveProfiles("test")
@@ -42,10 +61,18 @@ public class CabinetServiceTest {
     @Mock
     private CabinetRepository cabinetRepository;
     @Mock
+    private CabinetWriteRepository cabinetWriteRepository;
+    @Mock
     private LockerRepository lockerRepository;
     @Mock
+    private LockerWriteRepository lockerWriteRepository;
+    @Mock
     private LockerLogRepository lockerLogRepository;
     @Mock
+    private LockerReadRepository lockerReadRepository;
+    @Mock
+    private LockerLogCounterService lockerLogCounterService;
+    @Mock
     private TimeSlotConfigRepository timeSlotConfigRepository;
     @Mock
     private UserCabinetRepository userCabinetRepository;
@@ -65,15 +92,35 @@ public class CabinetServiceTest {
     private OrderRepository orderRepository;
     @Mock
     private CabinetLogRepository cabinetLogRepository;
+    @Mock
+    private LockerEventPublisher lockerEventPublisher;
+    @Mock
+    private TerminalSnapshotService terminalSnapshotService;
+    @Mock
+    private CabinetVersionRepository cabinetVersionRepository;
 
+    private ClassifierRegistry classifierRegistry;
+    private CabinetVersions cabinetVersions;
     private CabinetService cabinetService;
 
     @Before
     public void setUp() throws Exception {
-        cabinetService = new CabinetService(orderRepository, strongPointService, cabinetRepository, lockerRepository,
-                lockerLogRepository, timeSlotConfigRepository, userCabinetRepository, deliveryRepository,
-                routeRepository, storeRepository, classifierRepository, routeVersionCabinetsRepository,
-                routeVersionRepository, cabinetLogRepository);
+        classifierRegistry = new ClassifierRegistry(classifierRepository);
+        cabinetVersions = new CabinetVersions(cabinetVersionRepository);
+        Map<Long, Long> versions = new HashMap<>();
+        when(cabinetVersionRepository.increment(anyLong()))
+                .thenAnswer(invocation -> versions.merge(invocation.getArgument(0), 1L, Long::sum).intValue());
+        when(cabinetVersionRepository.findVersion(anyLong()))
+                .thenAnswer(invocation -> versions.get(invocation.<Long>getArgument(0)));
+        when(cabinetVersionRepository.sumCabinetVersions())
+                .thenAnswer(invocation -> versions.entrySet().stream().filter(e -> e.getKey() > 0).mapToLong(Map.Entry::getValue).sum());
+        when(cabinetVersionRepository.sumVersions())
+                .thenAnswer(invocation -> versions.values().stream().mapToLong(Long::longValue).sum());
+        cabinetService = new CabinetService(orderRepository, strongPointService, cabinetRepository, cabinetWriteRepository, lockerRepository,
+                lockerLogRepository, lockerReadRepository, lockerWriteRepository, lockerLogCounterService, timeSlotConfigRepository, userCabinetRepository, deliveryRepository,
+                routeRepository, storeRepository, classifierRegistry, routeVersionCabinetsRepository,
+                routeVersionRepository, cabinetLogRepository, new CabinetListFanOut(1, 10000, true), cabinetVersions,
+                lockerEventPublisher, terminalSnapshotService);
     }
 
     private Cabinet createCabinet(Long id, String name, String status, Long deletedAt) {
@@ -232,6 +279,15 @@ public class CabinetServiceTest {
         return spTerminalEvent;
     }
 
+    private SpBox createBox(Long boxIndex, boolean isDisabled, Long tempMode) {
+        SpBox spBox = new SpBox();
+        spBox.setBoxIndex(boxIndex);
+        spBox.setIsDisabled(isDisabled);
+        spBox.setTempMode(tempMode);
+
+        return spBox;
+    }
+
     private CabinetLogRow createCabinetLogRow(Long timestamp, String status, Long index) {
         CabinetLogRow cabinetLogRow = new CabinetLogRow();
         cabinetLogRow.setTimeStamp(timestamp);
@@ -305,6 +361,77 @@ public class CabinetServiceTest {
         assertEquals(availableCabinets.hashCode(), result.hashCode());
     }
 
+    @Test
+    public void testGetAvailableCabinetsIsResolvedOncePerDay() {
+        Cabinet cabinet = createCabinet(1L, "Rimi", "LOCKER_STATE_ACTIVE", null);
+        RouteVersion routeVersion = createRouteVersion(1L, 1L, "OK", 1533081600000L, null, "Route Version");
+
+        List<RouteVersion> routeVersions = new ArrayList<>();
+        routeVersions.add(routeVersion);
+        List<RouteVersionCabinets> routeVersionCabinets = new ArrayList<>();
+        routeVersionCabinets.add(createRouteVersionCabinet(1L, 1L, cabinet));
+
+        when(routeVersionRepository.findAll())
+                .thenReturn(routeVersions);
+        when(routeVersionCabinetsRepository.findAllByRouteVersionId(1L))
+                .thenReturn(routeVersionCabinets);
+
+        Iterable<Cabinet> first = cabinetService.getAvailableCabinets();
+        Iterable<Cabinet> second = cabinetService.getAvailableCabinets();
+
+        assertEquals(first, second);
+        verify(routeVersionRepository, times(1)).findAll();
+        verify(routeVersionCabinetsRepository, times(1)).findAllByRouteVersionId(1L);
+
+        cabinetService.invalidateRouteVersions();
+        cabinetService.getAvailableCabinets();
+
+        verify(routeVersionRepository, times(2)).findAll();
+        verify(routeVersionCabinetsRepository, times(2)).findAllByRouteVersionId(1L);
+    }
+
+    @Test
+    public void testAvailableCabinetsAreResetAfterCommit() {
+        Cabinet cabinet = createCabinet(1L, "Rimi", "LOCKER_STATE_ACTIVE", null);
+        RouteVersion routeVersion = createRouteVersion(1L, 1L, "OK", 1533081600000L, null, "Route Version");
+
+        when(routeVersionRepository.findAll())
+                .thenReturn(Collections.singletonList(routeVersion));
+        when(routeVersionCabinetsRepository.findAllByRouteVersionId(1L))
+                .thenReturn(Collections.singletonList(createRouteVersionCabinet(1L, 1L, cabinet)));
+        when(cabinetRepository.findOneById(1L))
+                .thenReturn(cabinet);
+        cabinetService.getAvailableCabinets();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cabinetService.updateCabinet(cabinet, 1L);
+            cabinetService.getAvailableCabinets();
+            verify(routeVersionCabinetsRepository, times(1)).findAllByRouteVersionId(1L);
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cabinetService.getAvailableCabinets();
+        verify(routeVersionCabinetsRepository, times(2)).findAllByRouteVersionId(1L);
+    }
+
+    @Test
+    public void testRouteVersionsAreReloadedPeriodicallyWithoutChangingEtags() {
+        when(routeVersionRepository.findAll())
+                .thenReturn(Collections.singletonList(createRouteVersion(1L, 1L, "OK", 1533081600000L, null, "Route Version")));
+        cabinetService.getAvailableCabinets();
+        String lockersEtag = cabinetVersions.lockersEtag();
+
+        cabinetService.reloadRouteVersions();
+
+        verify(routeVersionRepository, times(2)).findAll();
+        assertEquals(lockersEtag, cabinetVersions.lockersEtag());
+    }
+
     @Test(expected = NullPointerException.class)
     public void testGetAvailableCabinetsIterableValidTimesNull() {
         Cabinet cabinet1 = createCabinet(1L, "Rimi", "LOCKER_STATE_ACTIVE", null);
@@ -338,173 +465,57 @@ public class CabinetServiceTest {
 
     @Test
     public void testGetInactiveLockers() {
-        Locker workingLocker1 = createLocker(1L, 1L, 1L, "LOCKER_OK", "ok", null);
-        Locker notWorkingLocker1 = createLocker(3L, 3L, 3L, "LOCKER_NEEDS_ATTENTION", "ok", null);
-        Locker notWorkingLocker2 = createLocker(4L, 4L, 4L, "LOCKER_NEEDS_REPAIRING", "ok", null);
-        Locker notWorkingLocker3 = createLocker(5L, 5L, 5L, "LOCKER_NEEDS_CLEANING", "ok", null);
-        Locker notWorkingLocker4 = createLocker(6L, 6L, 6L, "LOCKER_IN_REPAIRING", "ok", null);
-        Locker notWorkingLocker5 = createLocker(7L, 7L, 7L, "LOCKER_IN_CLEANING", "ok", null);
-        Locker notWorkingLocker6 = createLocker(8L, 8L, 8L, "LOCKER_TURNED_OFF", "ok", null);
-        Locker notWorkingLocker7 = createLocker(9L, 9L, 9L, "LOCKER_WRONG_TEMPERATURE", "ok", null);
-        Cabinet cabinet = createCabinet(1L, "Rimi", null, null);
-
         LockerDetails lockerDetails1 = createLockerDetails("Rimi", 3L, 3L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
         LockerDetails lockerDetails2 = createLockerDetails("Rimi", 4L, 4L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
-        LockerDetails lockerDetails3 = createLockerDetails("Rimi", 5L, 5L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
-        LockerDetails lockerDetails4 = createLockerDetails("Rimi", 6L, 6L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
-        LockerDetails lockerDetails5 = createLockerDetails("Rimi", 7L, 7L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
-        LockerDetails lockerDetails6 = createLockerDetails("Rimi", 8L, 8L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
-        LockerDetails lockerDetails7 = createLockerDetails("Rimi", 9L, 9L, "Viimsi", "Viimsi Rimi", "ok", "value", 7L);
+        LockerDetails lockerDetails3 = createLockerDetails("Rimi", 5L, 5L, null, null, "ok", "value", 0L);
 
-        Store store = new Store();
-        store.setName("Viimsi rimi");
-
-        Route route = new Route();
-        route.setName("Viimsi");
-        route.setStore(store);
+        List<LockerDetails> lockerDetails = new ArrayList<>();
+        lockerDetails.add(lockerDetails1);
+        lockerDetails.add(lockerDetails2);
+        lockerDetails.add(lockerDetails3);
 
-        Classifier classifier = new Classifier();
-        classifier.setValueEt("value");
-
-        List<Locker> notWorkingLockers = new ArrayList<>();
-        notWorkingLockers.add(notWorkingLocker1);
-        notWorkingLockers.add(notWorkingLocker2);
-        notWorkingLockers.add(notWorkingLocker3);
-        notWorkingLockers.add(notWorkingLocker4);
-        notWorkingLockers.add(notWorkingLocker5);
-        notWorkingLockers.add(notWorkingLocker6);
-        notWorkingLockers.add(notWorkingLocker7);
-
-        when(lockerRepository.findAllByStatusNot(anyString()))
-                .thenReturn(notWorkingLockers);
-        when(cabinetRepository.findOneById(anyLong()))
-                .thenReturn(cabinet);
-        when(cabinetRepository.findOneById(anyLong()))
-                .thenReturn(cabinet);
-        when(routeRepository.findByCabinetId(anyLong()))
-                .thenReturn(route);
-        when(classifierRepository.findFirstByKey(anyString()))
-                .thenReturn(classifier);
-        when(lockerLogRepository.countAllByLockerId(anyLong()))
-                .thenReturn(notWorkingLockers.size());
+        when(lockerReadRepository.findLockerDetailsByStatusNot("LOCKER_STATE_ACTIVE"))
+                .thenReturn(lockerDetails);
 
         List<LockerDetails> result = cabinetService.getInactiveLockers();
 
-        List<LockerDetails> testResult = new ArrayList<>();
-        testResult.add(lockerDetails1);
-        testResult.add(lockerDetails2);
-        testResult.add(lockerDetails3);
-        testResult.add(lockerDetails4);
-        testResult.add(lockerDetails5);
-        testResult.add(lockerDetails6);
-        testResult.add(lockerDetails7);
-
-        assertEquals(testResult.size(), result.size());
-        assertEquals(testResult.get(0).getCabinetName(), result.get(0).getCabinetName());
-        assertEquals(testResult.get(6).getStatus(), result.get(6).getStatus());
-
-        assertEquals(testResult.get(0).getId(), result.get(0).getId());
-        assertEquals(testResult.get(6).getId(), result.get(6).getId());
-
-        assertEquals(testResult.get(0).getCabinetName(), result.get(0).getCabinetName());
-        assertEquals(testResult.get(6).getCabinetName(), result.get(6).getCabinetName());
-
-        assertEquals(testResult.get(0).getIndex(), result.get(0).getIndex());
-        assertEquals(testResult.get(6).getIndex(), result.get(6).getIndex());
-
-        assertEquals(testResult.get(0).getComment(), result.get(0).getComment());
-        assertEquals(testResult.get(6).getComment(), result.get(6).getComment());
-
-        assertEquals(testResult.get(0).getStatus(), result.get(0).getStatus());
-        assertEquals(testResult.get(6).getStatus(), result.get(6).getStatus());
-
-        assertEquals(testResult.get(0).getLogCount(), result.get(0).getLogCount());
-        assertEquals(testResult.get(6).getLogCount(), result.get(6).getLogCount());
+        assertEquals(lockerDetails.size(), result.size());
+        assertEquals(lockerDetails.get(0).getCabinetName(), result.get(0).getCabinetName());
+        assertEquals(lockerDetails.get(0).getRouteName(), result.get(0).getRouteName());
+        assertEquals(lockerDetails.get(0).getStoreName(), result.get(0).getStoreName());
+        assertEquals(lockerDetails.get(0).getLogCount(), result.get(0).getLogCount());
+        assertEquals(lockerDetails.get(2).getRouteName(), result.get(2).getRouteName());
+        assertEquals(lockerDetails.get(2).getLogCount(), result.get(2).getLogCount());
     }
 
-    @Test(expected = NullPointerException.class)
-    public void testGetInactiveLockersCabinetIdNull() {
-        Locker notWorkingLocker1 = createLocker(3L, null, 3L, "LOCKER_NEEDS_ATTENTION", "ok", null);
-        Locker notWorkingLocker2 = createLocker(4L, null, 4L, "LOCKER_NEEDS_REPAIRING", "ok", null);
-
-        LockerDetails lockerDetails1 = createLockerDetails(null, 3L, 3L, null,
-                null, "ok", "value", 7L);
-        LockerDetails lockerDetails2 = createLockerDetails(null, 4L, 4L, null,
-                null, "ok", "value", 7L);
-
-        Store store = new Store();
-        store.setName("Viimsi rimi");
-
-        Route route = new Route();
-        route.setName("Viimsi");
-        route.setStore(store);
-
-        Classifier classifier = new Classifier();
-        classifier.setValueEt("value");
-
-        List<Locker> notWorkingLockers = new ArrayList<>();
-        notWorkingLockers.add(notWorkingLocker1);
-        notWorkingLockers.add(notWorkingLocker2);
+    @Test
+    public void testGetInactiveLockersStatusNull() {
+        List<LockerDetails> lockerDetails = new ArrayList<>();
 
-        when(lockerRepository.findAllByStatusNot(anyString()))
-                .thenReturn(notWorkingLockers);
-        when(cabinetRepository.findOneById(anyLong()))
-                .thenThrow(NullPointerException.class);
-        when(cabinetRepository.findOneById(anyLong()))
-                .thenThrow(NullPointerException.class);
-        when(routeRepository.findByCabinetId(anyLong()))
-                .thenReturn(route);
-        when(classifierRepository.findFirstByKey(anyString()))
-                .thenReturn(classifier);
-        when(lockerLogRepository.countAllByLockerId(anyLong()))
-                .thenReturn(notWorkingLockers.size());
+        when(lockerReadRepository.findLockerDetailsByStatusNot(anyString()))
+                .thenReturn(lockerDetails);
 
         List<LockerDetails> result = cabinetService.getInactiveLockers();
-        List<LockerDetails> testResult = new ArrayList<>();
-        testResult.add(lockerDetails1);
-        testResult.add(lockerDetails2);
 
-        assertEquals(testResult.size(), result.size());
+        assertEquals(0, result.size());
     }
 
     @Test
-    public void testGetInactiveLockersStatusNull() {
-        Cabinet cabinet = createCabinet(1L, "Rimi", null, null);
-        Locker locker1 = createLocker(3L, 1L, 3L, null, "ok", null);
-        Locker locker2 = createLocker(4L, 1L, 4L, null, "ok", null);
-
-        LockerDetails lockerDetails1 = createLockerDetails("Rimi", 3L, 3L, "Viimsi",
-                "Viimsi Rimi", "ok", "value", 7L);
-        LockerDetails lockerDetails2 = createLockerDetails("Rimi", 4L, 4L, "Viimsi",
-                "Viimsi Rimi", "ok", "value", 7L);
-
-        Store store = new Store();
-        store.setName("Viimsi rimi");
-
-        Route route = new Route();
-        route.setName("Viimsi");
-        route.setStore(store);
-
-        Classifier classifier = new Classifier();
-        classifier.setValueEt("value");
-
-        List<Locker> notWorkingLockers = new ArrayList<>();
-
-        when(lockerRepository.findAllByStatusNot(anyString()))
-                .thenReturn(notWorkingLockers);
-        when(cabinetRepository.findOneById(anyLong()))
-                .thenReturn(cabinet);
-        when(routeRepository.findByCabinetId(anyLong()))
-                .thenReturn(route);
-        when(classifierRepository.findFirstByKey(anyString()))
-                .thenReturn(classifier);
-        when(lockerLogRepository.countAllByLockerId(anyLong()))
-                .thenReturn(notWorkingLockers.size());
+    public void testGetInactiveLockersOnlyUsesTheProjection() {
+        List<LockerDetails> lockerDetails = new ArrayList<>();
+        for (long i = 0; i < 10; i++) {
+            lockerDetails.add(createLockerDetails("Rimi", i, i, "Viimsi", "Viimsi Rimi", "ok", "value", 7L));
+        }
+        when(lockerReadRepository.findLockerDetailsByStatusNot(anyString()))
+                .thenReturn(lockerDetails);
 
         List<LockerDetails> result = cabinetService.getInactiveLockers();
-        List<LockerDetails> testResult = new ArrayList<>();
 
-        assertEquals(testResult.size(), result.size());
+        assertEquals(lockerDetails.size(), result.size());
+        verify(lockerReadRepository, times(1)).findLockerDetailsByStatusNot(anyString());
+        Mockito.verifyNoMoreInteractions(lockerReadRepository);
+        Mockito.verifyZeroInteractions(lockerRepository, cabinetRepository, routeRepository, classifierRepository,
+                lockerLogRepository);
     }
 
     @Test
@@ -557,7 +568,7 @@ public class CabinetServiceTest {
         route1.setStore(store1);
 
         Route route2 = new Route();
-        route2.setId(1L);
+        route2.setId(2L);
         route2.setName("Lasnamägi");
         route2.setStore(store2);
 
@@ -596,10 +607,8 @@ public class CabinetServiceTest {
                 .thenReturn(routeVersion1);
         when(routeVersionRepository.findOneById(2L))
                 .thenReturn(routeVersion2);
-        when(routeRepository.findById(1L))
-                .thenReturn(Optional.ofNullable(route1));
-        when(routeRepository.findById(2L))
-                .thenReturn(Optional.ofNullable(route2));
+        when(routeRepository.findAll())
+                .thenReturn(Arrays.asList(route1, route2));
         when(classifierRepository.findFirstByKey(anyString())).thenReturn(classifier);
 
         List<CabinetListRow> result = cabinetService.getCabinetsForList();
@@ -678,7 +687,7 @@ public class CabinetServiceTest {
         route1.setStore(store1);
 
         Route route2 = new Route();
-        route2.setId(1L);
+        route2.setId(2L);
         route2.setName("Lasnamägi");
         route2.setStore(store2);
 
@@ -713,10 +722,8 @@ public class CabinetServiceTest {
                 .thenReturn(routeVersion1);
         when(routeVersionRepository.findOneById(2L))
                 .thenReturn(routeVersion2);
-        when(routeRepository.findById(1L))
-                .thenReturn(Optional.ofNullable(route1));
-        when(routeRepository.findById(2L))
-                .thenReturn(Optional.ofNullable(route2));
+        when(routeRepository.findAll())
+                .thenReturn(Arrays.asList(route1, route2));
         when(classifierRepository.findFirstByKey(anyString())).thenReturn(classifier);
 
         List<CabinetListRow> result = cabinetService.getCabinetsForList();
@@ -803,6 +810,102 @@ public class CabinetServiceTest {
         assertEquals(cabinetListRows.get(0).getStatus(), result.get(0).getStatus());
     }
 
+    @Test
+    public void testGetCabinetsForListIsPatchedIncrementally() {
+        Cabinet cabinet = createCabinet(1L, "Pirita Selver", null, null);
+        Locker locker1 = createLocker(1L, 1L, 1L, "LOCKER_STATE_ACTIVE", null, null);
+        Locker locker2 = createLocker(2L, 1L, 2L, "LOCKER_STATE_ACTIVE", null, null);
+
+        List<Cabinet> cabinets = new ArrayList<>();
+        cabinets.add(cabinet);
+        List<Locker> lockers = new ArrayList<>();
+        lockers.add(locker1);
+        lockers.add(locker2);
+
+        when(cabinetRepository.findAll())
+                .thenReturn(cabinets);
+        when(cabinetRepository.findOneById(1L))
+                .thenReturn(cabinet);
+        when(lockerRepository.findAllByCabinetIdOrderByIndex(1L))
+                .thenReturn(lockers);
+        when(lockerRepository.findOneById(2L))
+                .thenReturn(locker2);
+
+        List<CabinetListRow> before = cabinetService.getCabinetsForList();
+        assertEquals(Long.valueOf(0L), before.get(0).getLockerErrorCount());
+        assertEquals("LOCKER_STATE_ACTIVE", before.get(0).getLockerStatus());
+
+        LockerLogUpdate lockerLogUpdate = new LockerLogUpdate();
+        lockerLogUpdate.setStatus("LOCKER_STATE_INACTIVE");
+        cabinetService.updateLockerStatus(2L, lockerLogUpdate);
+
+        List<CabinetListRow> after = cabinetService.getCabinetsForList();
+        assertEquals(Long.valueOf(1L), after.get(0).getLockerErrorCount());
+        assertEquals("LOCKER_STATE_INACTIVE", after.get(0).getLockerStatus());
+        verify(lockerRepository, times(1)).findAllByCabinetIdOrderByIndex(1L);
+        verify(cabinetRepository, times(1)).findAll();
+        verify(cabinetRepository, never()).count();
+    }
+
+    @Test
+    public void testCabinetListIsPatchedAfterCommit() {
+        Cabinet cabinet = createCabinet(1L, "Pirita Selver", null, null);
+        Locker locker = createLocker(2L, 1L, 2L, "LOCKER_STATE_ACTIVE", null, null);
+
+        when(cabinetRepository.findAll())
+                .thenReturn(Collections.singletonList(cabinet));
+        when(cabinetRepository.findOneById(1L))
+                .thenReturn(cabinet);
+        when(lockerRepository.findAllByCabinetIdOrderByIndex(1L))
+                .thenReturn(Collections.singletonList(locker));
+        when(lockerRepository.findOneById(2L))
+                .thenReturn(locker);
+        cabinetService.getCabinetsForList();
+
+        LockerLogUpdate lockerLogUpdate = new LockerLogUpdate();
+        lockerLogUpdate.setStatus("LOCKER_STATE_INACTIVE");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cabinetService.updateLockerStatus(2L, lockerLogUpdate);
+            assertEquals(Long.valueOf(0L), cabinetService.getCabinetsForList().get(0).getLockerErrorCount());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(Long.valueOf(1L), cabinetService.getCabinetsForList().get(0).getLockerErrorCount());
+    }
+
+    @Test
+    public void testCabinetChangedWhileListIsLoadingIsReloaded() {
+        Cabinet cabinet = createCabinet(1L, "Pirita Selver", null, null);
+        Locker loadedLocker = createLocker(2L, 1L, 2L, "LOCKER_STATE_ACTIVE", null, null);
+        Locker locker = createLocker(2L, 1L, 2L, "LOCKER_STATE_ACTIVE", null, null);
+        LockerLogUpdate lockerLogUpdate = new LockerLogUpdate();
+        lockerLogUpdate.setStatus("LOCKER_STATE_INACTIVE");
+
+        when(cabinetRepository.findAll())
+                .thenReturn(Collections.singletonList(cabinet));
+        when(cabinetRepository.findOneById(1L))
+                .thenReturn(cabinet);
+        when(lockerRepository.findOneById(2L))
+                .thenReturn(locker);
+        when(lockerRepository.findAllByCabinetIdOrderByIndex(1L))
+                .thenAnswer(invocation -> {
+                    // committed after the row read its lockers, but before the list is published
+                    cabinetService.updateLockerStatus(2L, lockerLogUpdate);
+                    return Collections.singletonList(loadedLocker);
+                })
+                .thenReturn(Collections.singletonList(locker));
+
+        List<CabinetListRow> result = cabinetService.getCabinetsForList();
+
+        assertEquals(Long.valueOf(1L), result.get(0).getLockerErrorCount());
+        verify(lockerRepository, times(2)).findAllByCabinetIdOrderByIndex(1L);
+    }
+
     @Test
     public void testGetLockerLogById() {
         Cabinet cabinetNormal1 = createCabinet(1L, "Pirita Selver", null, null);
@@ -942,6 +1045,28 @@ public class CabinetServiceTest {
         assertEquals(lockerLogs.size(), result.size());
     }
 
+    @Test
+    public void testForEachLockerLogEntryWalksPagesByKey() {
+        List<LockerLogEntry> firstPage = new ArrayList<>();
+        for (long id = 1000; id > 500; id--) {
+            firstPage.add(new LockerLogEntry(id, 1L, 1L, "LOCKER_STATE_ACTIVE", null, null, null, null));
+        }
+        List<LockerLogEntry> secondPage = new ArrayList<>();
+        secondPage.add(new LockerLogEntry(12L, 1L, 1L, "LOCKER_STATE_INACTIVE", null, null, null, null));
+
+        when(lockerLogRepository.findEntriesByLockerId(Mockito.eq(1L), Mockito.eq(Long.MAX_VALUE), Mockito.any(Pageable.class)))
+                .thenReturn(firstPage);
+        when(lockerLogRepository.findEntriesByLockerId(Mockito.eq(1L), Mockito.eq(501L), Mockito.any(Pageable.class)))
+                .thenReturn(secondPage);
+
+        List<LockerLogEntry> result = new ArrayList<>();
+        cabinetService.forEachLockerLogEntry(1L, null, null, result::add);
+
+        assertEquals(501, result.size());
+        assertEquals(Long.valueOf(12L), result.get(500).getId());
+        verify(lockerLogRepository, never()).findAllByLockerId(anyLong());
+    }
+
     @Test
     public void testGetLockers() {
         Locker workingLocker1 = createLocker(1L, 1L, 1L, "LOCKER_OK", "ok", null);
@@ -1362,6 +1487,23 @@ public class CabinetServiceTest {
         assertEquals(cabinet.getName(), result.getName());
     }
 
+    @Test
+    public void testLogAndSetCabinetStatusUpdatesOnlyStatus() {
+        SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, null, true);
+        Cabinet cabinet = createCabinet(1L, "Tartu Selver", "CABINET_STATUS_ACTIVE", null);
+        cabinet.setExternalId("id");
+
+        when(cabinetRepository.findOneByExternalId("id"))
+                .thenReturn(cabinet);
+
+        Cabinet result = cabinetService.logAndSetCabinetStatus(spTerminalEvent);
+
+        assertEquals("CABINET_STATUS_INACTIVE", result.getStatus());
+        verify(cabinetLogRepository).save(Mockito.any(CabinetLog.class));
+        verify(cabinetWriteRepository).updateStatus(1L, "CABINET_STATUS_INACTIVE");
+        verify(cabinetRepository, never()).save(Mockito.any(Cabinet.class));
+    }
+
     @Test
     public void testLogAndSetCabinetStatusWhenCabinetNull() {
         SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, null, false);
@@ -1373,6 +1515,136 @@ public class CabinetServiceTest {
 
     }
 
+    @Test
+    public void testUpdateLockersWritesOnlyChangedLockers() {
+        Cabinet cabinet = createCabinet(1L, "Tartu Selver", "CABINET_STATUS_ACTIVE", null);
+        cabinet.setExternalId("id");
+
+        Locker unchangedLocker = createLocker(1L, 1L, 1L, "LOCKER_STATE_ACTIVE", null, null);
+        unchangedLocker.setThermoMode(4L);
+        Locker disabledLocker = createLocker(2L, 1L, 2L, "LOCKER_STATE_ACTIVE", null, null);
+        disabledLocker.setThermoMode(4L);
+        Locker thermoLocker = createLocker(3L, 1L, 3L, "LOCKER_STATE_ACTIVE", null, null);
+        thermoLocker.setThermoMode(4L);
+
+        List<Locker> lockers = new ArrayList<>();
+        lockers.add(unchangedLocker);
+        lockers.add(disabledLocker);
+        lockers.add(thermoLocker);
+
+        List<SpBox> boxes = new ArrayList<>();
+        boxes.add(createBox(1L, false, 4L));
+        boxes.add(createBox(2L, true, 4L));
+        boxes.add(createBox(3L, false, 2L));
+        boxes.add(createBox(4L, false, 4L));
+        SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, boxes, false);
+
+        when(cabinetRepository.findOneByExternalId("id"))
+                .thenReturn(cabinet);
+        when(lockerRepository.findAllByCabinetIdOrderByIndex(1L))
+                .thenReturn(lockers);
+
+        cabinetService.updateLockers(spTerminalEvent);
+
+        ArgumentCaptor<List<LockerLog>> savedLogs = ArgumentCaptor.forClass(List.class);
+        verify(cabinetRepository, times(1)).findOneByExternalId("id");
+        verify(lockerRepository, never()).findOneByCabinetIdAndIndex(anyLong(), anyLong());
+        verify(lockerRepository, never()).save(Mockito.any(Locker.class));
+        verify(lockerRepository, never()).saveAll(Mockito.anyIterable());
+        verify(lockerWriteRepository).updateStatus(Arrays.asList(2L), "LOCKER_STATE_INACTIVE");
+        verify(lockerWriteRepository).updateThermoMode(Arrays.asList(3L), 2L);
+        verify(lockerLogRepository).saveAll(savedLogs.capture());
+        verify(lockerLogCounterService).record(savedLogs.getValue());
+
+        assertEquals("LOCKER_STATE_INACTIVE", disabledLocker.getStatus());
+        assertEquals(Long.valueOf(2L), thermoLocker.getThermoMode());
+        assertEquals(1, cabinetService.getAvoidedLockerWrites());
+
+        assertEquals(1, savedLogs.getValue().size());
+        assertEquals("LOCKER_STATE_INACTIVE", savedLogs.getValue().get(0).getStatus());
+        assertEquals(cabinet, savedLogs.getValue().get(0).getCabinet());
+    }
+
+    @Test
+    public void testUpdateLockersWhenNothingChanged() {
+        Cabinet cabinet = createCabinet(1L, "Tartu Selver", "CABINET_STATUS_ACTIVE", null);
+        cabinet.setExternalId("id");
+        Locker locker = createLocker(1L, 1L, 1L, "LOCKER_STATE_ACTIVE", null, null);
+        locker.setThermoMode(4L);
+
+        List<Locker> lockers = new ArrayList<>();
+        lockers.add(locker);
+        List<SpBox> boxes = new ArrayList<>();
+        boxes.add(createBox(1L, false, 4L));
+        SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, boxes, false);
+
+        when(cabinetRepository.findOneByExternalId("id"))
+                .thenReturn(cabinet);
+        when(lockerRepository.findAllByCabinetIdOrderByIndex(1L))
+                .thenReturn(lockers);
+
+        cabinetService.updateLockers(spTerminalEvent);
+
+        verify(lockerRepository, never()).saveAll(Mockito.anyList());
+        verify(lockerLogRepository, never()).saveAll(Mockito.anyList());
+        verify(cabinetRepository, never()).save(Mockito.any(Cabinet.class));
+        Mockito.verifyZeroInteractions(lockerWriteRepository, cabinetWriteRepository);
+        assertEquals(1, cabinetService.getAvoidedCabinetWrites());
+    }
+
+    @Test
+    public void testUpdateLockersStaysWithinQueryBudget() {
+        Cabinet cabinet = createCabinet(1L, "Tartu Selver", "CABINET_STATUS_ACTIVE", null);
+        cabinet.setExternalId("id");
+        List<Locker> lockers = new ArrayList<>();
+        List<SpBox> boxes = new ArrayList<>();
+        for (long index = 1; index <= 100; index++) {
+            lockers.add(createLocker(index, 1L, index, "LOCKER_STATE_ACTIVE", null, null));
+            boxes.add(createBox(index, true, 2L));
+        }
+        SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, boxes, false);
+
+        when(cabinetRepository.findOneByExternalId("id"))
+                .thenReturn(cabinet);
+        when(lockerRepository.findAllByCabinetIdOrderByIndex(1L))
+                .thenReturn(lockers);
+
+        QueryBudget.of(cabinetRepository, cabinetWriteRepository, lockerRepository, lockerWriteRepository, lockerLogRepository, cabinetLogRepository)
+                .assertAtMost(5, () -> cabinetService.updateLockers(spTerminalEvent));
+    }
+
+    @Test
+    public void testUnchangedTerminalEventIsSkipped() {
+        List<SpBox> boxes = new ArrayList<>();
+        boxes.add(createBox(1L, true, 2L));
+        SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, boxes, false);
+
+        when(terminalSnapshotService.isUnchanged("id", TerminalSnapshotService.fingerprint(spTerminalEvent)))
+                .thenReturn(true);
+
+        cabinetService.updateLockers(spTerminalEvent);
+
+        verify(cabinetRepository, never()).findOneByExternalId(anyString());
+        verify(lockerRepository, never()).findAllByCabinetIdOrderByIndex(anyLong());
+        verify(terminalSnapshotService, never()).applied(anyString(), anyLong());
+    }
+
+    @Test
+    public void testAppliedTerminalEventRecordsFingerprint() {
+        Cabinet cabinet = createCabinet(1L, "Tartu Selver", "CABINET_STATUS_ACTIVE", null);
+        cabinet.setExternalId("id");
+        List<SpBox> boxes = new ArrayList<>();
+        boxes.add(createBox(1L, true, 2L));
+        SpTerminalEvent spTerminalEvent = createTerminalEvent("id", null, boxes, false);
+
+        when(cabinetRepository.findOneByExternalId("id"))
+                .thenReturn(cabinet);
+
+        cabinetService.updateLockers(spTerminalEvent);
+
+        verify(terminalSnapshotService).applied("id", TerminalSnapshotService.fingerprint(spTerminalEvent));
+    }
+
     @Test
     public void getLockerClassifiers() {
         Classifier classifier1 = createClassifier(1L, 8L, "LOCKER_OK");
@@ -1442,6 +1714,34 @@ public class CabinetServiceTest {
         assertEquals(validClassifiers.get(2).getKey(), result.get(2).getKey());
     }
 
+    @Test
+    public void testGetLockerStatusesFromPreloadedRegistry() {
+        Classifier classifier1 = createClassifier(1L, 8L, "LOCKER_OK");
+        Classifier classifier2 = createClassifier(2L, 8L, "LOCKER_STATE_PACKAGE_LOADED");
+        Classifier classifier3 = createClassifier(3L, 10L, "CABINET_STATUS_ACTIVE");
+
+        List<Classifier> allClassifiers = new ArrayList<>();
+        allClassifiers.add(classifier1);
+        allClassifiers.add(classifier2);
+        allClassifiers.add(classifier3);
+
+        when(classifierRepository.findAll())
+                .thenReturn(allClassifiers);
+        classifierRegistry.preload();
+
+        List<Classifier> first = cabinetService.getLockerStatuses();
+        List<Classifier> second = cabinetService.getLockerStatuses();
+
+        assertEquals(1, first.size());
+        assertEquals(first, second);
+        assertEquals(classifier3, classifierRegistry.findFirstByKey("CABINET_STATUS_ACTIVE"));
+        assertEquals(null, classifierRegistry.findFirstByKey("CABINET_STATUS_UNKNOWN"));
+        assertEquals(3, classifierRegistry.getHitCount());
+        assertEquals(1, classifierRegistry.getMissCount());
+        verify(classifierRepository, never()).findAllByParentId(anyLong());
+        verify(classifierRepository, never()).findFirstByKey(anyString());
+    }
+
     @Test
     public void testUpdateLockerStatus() {
         Long lockerId = 1L;
@@ -1459,12 +1759,12 @@ public class CabinetServiceTest {
         when(cabinetRepository.findOneById(anyLong()))
                 .thenReturn(cabinet);
 
-        LockerLog result = cabinetService.updateLockerStatus(lockerId, lockerLogUpdate);
+        LockerLogEntry result = cabinetService.updateLockerStatus(lockerId, lockerLogUpdate);
 
         assertEquals(result.getStatus(), lockerLog.getStatus());
         assertEquals(result.getComment(), lockerLog.getComment());
-        assertEquals(result.getLocker(), lockerLog.getLocker());
-        assertEquals(result.getCabinet(), lockerLog.getCabinet());
+        assertEquals(result.getLockerId(), lockerLog.getLocker().getId());
+        assertEquals(result.getCabinetId(), lockerLog.getCabinet().getId());
     }
 
     @Test
@@ -1484,12 +1784,111 @@ public class CabinetServiceTest {
         when(cabinetRepository.findOneById(anyLong()))
                 .thenReturn(cabinet);
 
-        LockerLog result = cabinetService.updateLockerStatus(lockerId, lockerLogUpdate);
+        LockerLogEntry result = cabinetService.updateLockerStatus(lockerId, lockerLogUpdate);
 
         assertEquals(result.getStatus(), lockerLog.getStatus());
         assertEquals(result.getComment(), lockerLog.getComment());
-        assertEquals(result.getLocker(), lockerLog.getLocker());
-        assertEquals(result.getCabinet(), lockerLog.getCabinet());
+        assertEquals(result.getLockerId(), lockerLog.getLocker().getId());
+        assertEquals(result.getCabinetId(), lockerLog.getCabinet().getId());
+    }
+
+    @Test
+    public void testUpdateLockerStatusChangesEtagsOfItsCabinet() {
+        LockerLogUpdate lockerLogUpdate = new LockerLogUpdate();
+        lockerLogUpdate.setStatus("LOCKER_STATE_INACTIVE");
+        Locker locker = createLocker(1L, 1L, 1L, "LOCKER_STATE_ACTIVE", null, null);
+
+        when(lockerRepository.findOneById(1L))
+                .thenReturn(locker);
+        when(cabinetRepository.findOneById(1L))
+                .thenReturn(createCabinet(1L, "Selver", null, null));
+
+        String cabinetEtag = cabinetVersions.cabinetEtag(1L);
+        String otherCabinetEtag = cabinetVersions.cabinetEtag(2L);
+        String lockersEtag = cabinetVersions.lockersEtag();
+        cabinetService.getInactiveLockers();
+        assertEquals(lockersEtag, cabinetVersions.lockersEtag());
+
+        cabinetService.updateLockerStatus(1L, lockerLogUpdate);
+
+        assertNotEquals(cabinetEtag, cabinetVersions.cabinetEtag(1L));
+        assertNotEquals(lockersEtag, cabinetVersions.lockersEtag());
+        assertEquals(otherCabinetEtag, cabinetVersions.cabinetEtag(2L));
+    }
+
+    @Test
+    public void testRouteAndClassifierChangesChangeInactiveLockersEtag() {
+        String lockersEtag = cabinetVersions.lockersEtag(classifierRegistry.getVersion());
+
+        classifierRegistry.invalidate();
+        String afterClassifiers = cabinetVersions.lockersEtag(classifierRegistry.getVersion());
+        assertNotEquals(lockersEtag, afterClassifiers);
+
+        cabinetService.invalidateRouteVersions();
+        assertNotEquals(afterClassifiers, cabinetVersions.lockersEtag(classifierRegistry.getVersion()));
+    }
+
+    @Test
+    public void testCabinetEtagOfUnchangedCabinetIsStable() {
+        String etag = cabinetVersions.cabinetEtag(99L);
+
+        assertEquals(etag, cabinetVersions.cabinetEtag(99L));
+        cabinetVersions.cabinetChanged(99L);
+        assertNotEquals(etag, cabinetVersions.cabinetEtag(99L));
+    }
+
+    @Test
+    public void testUpdateLockerStatusesResolvesLockersAndCabinetsOnce() {
+        Cabinet cabinet = createCabinet(1L, "Selver", null, null);
+        List<Locker> lockers = new ArrayList<>();
+        List<LockerStatusUpdate> updates = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            lockers.add(createLocker(id, 1L, id, "LOCKER_STATE_ACTIVE", null, null));
+            LockerLogUpdate lockerLogUpdate = new LockerLogUpdate();
+            lockerLogUpdate.setStatus("LOCKER_STATE_INACTIVE");
+            lockerLogUpdate.setComment("Uks ei lähe lukku");
+            updates.add(new LockerStatusUpdate(id, lockerLogUpdate));
+        }
+        updates.add(new LockerStatusUpdate(99L, new LockerLogUpdate()));
+        List<Cabinet> cabinets = new ArrayList<>();
+        cabinets.add(cabinet);
+
+        when(lockerRepository.findAllById(Mockito.anyIterable()))
+                .thenReturn(lockers);
+        when(cabinetRepository.findAllById(Mockito.anyIterable()))
+                .thenReturn(cabinets);
+
+        List<LockerStatusUpdateResult> results = cabinetService.updateLockerStatuses(updates);
+
+        ArgumentCaptor<List<LockerLog>> savedLogs = ArgumentCaptor.forClass(List.class);
+        verify(lockerLogRepository).saveAll(savedLogs.capture());
+        verify(lockerRepository).saveAll(Mockito.anyCollection());
+        verify(lockerRepository, never()).findOneById(anyLong());
+        verify(cabinetRepository, never()).findOneById(anyLong());
+        verify(lockerLogRepository, never()).save(Mockito.any(LockerLog.class));
+
+        assertEquals(21, results.size());
+        assertEquals(true, results.get(0).isUpdated());
+        assertEquals("LOCKER_STATE_INACTIVE", results.get(0).getStatus());
+        assertEquals(false, results.get(20).isUpdated());
+        assertEquals(20, savedLogs.getValue().size());
+        assertEquals(cabinet, savedLogs.getValue().get(0).getCabinet());
+        assertEquals("Uks ei lähe lukku", lockers.get(0).getComment());
+    }
+
+    @Test
+    public void testGetLockerRowsUsesProjection() {
+        List<LockerRow> rows = new ArrayList<>();
+        rows.add(new LockerRow(1L, 1L, 1L, "LOCKER_STATE_ACTIVE", null, null, 4L, null));
+        rows.add(new LockerRow(2L, 1L, 2L, "LOCKER_STATE_INACTIVE", null, null, 4L, "Uks ei lähe lukku"));
+
+        when(lockerReadRepository.findRowsByCabinetId(1L))
+                .thenReturn(rows);
+
+        List<LockerRow> result = cabinetService.getLockerRows(1L);
+
+        assertEquals(rows, result);
+        verify(lockerRepository, never()).findAllByCabinetIdOrderByIndex(anyLong());
     }
 
     @Test
@@ -1654,4 +2053,62 @@ public class CabinetServiceTest {
         when(cabinetService.getCabinetLogs(startTime, endTime, 1L, null))
                 .thenThrow(NullPointerException.class);
     }
+
+    @Test
+    public void testUpdateLockerStatusPublishesStateEvent() {
+        LockerLogUpdate lockerLogUpdate = new LockerLogUpdate();
+        lockerLogUpdate.setStatus("LOCKER_STATE_INACTIVE");
+
+        when(lockerRepository.findOneById(5L))
+                .thenReturn(createLocker(5L, 2L, 1L, "LOCKER_STATE_ACTIVE", null, null));
+        when(cabinetRepository.findOneById(2L))
+                .thenReturn(createCabinet(2L, "Selver", null, null));
+
+        cabinetService.updateLockerStatus(5L, lockerLogUpdate);
+
+        verify(terminalSnapshotService).invalidate(Mockito.any());
+        ArgumentCaptor<LockerStateEvent> event = ArgumentCaptor.forClass(LockerStateEvent.class);
+        verify(lockerEventPublisher).publish(event.capture());
+        assertEquals(LockerStateEvent.LOCKER_STATUS, event.getValue().getType());
+        assertEquals(Long.valueOf(2L), event.getValue().getCabinetId());
+        assertEquals(Long.valueOf(5L), event.getValue().getLockerId());
+        assertEquals("LOCKER_STATE_INACTIVE", event.getValue().getStatus());
+    }
+
+    @Test
+    public void testGetCabinetIdsOfStore() {
+        Store store = new Store();
+        store.setId(7L);
+        Route route = new Route();
+        route.setId(1L);
+        route.setStore(store);
+        Route otherRoute = new Route();
+        otherRoute.setId(2L);
+        otherRoute.setStore(new Store());
+        RouteVersion routeVersion = new RouteVersion();
+        routeVersion.setId(10L);
+        routeVersion.setRouteId(1L);
+        routeVersion.setValidFrom(0L);
+        RouteVersion otherRouteVersion = new RouteVersion();
+        otherRouteVersion.setId(20L);
+        otherRouteVersion.setRouteId(2L);
+        otherRouteVersion.setValidFrom(0L);
+        RouteVersionCabinets routeVersionCabinets = new RouteVersionCabinets();
+        routeVersionCabinets.setCabinet(createCabinet(3L, "Selver", null, null));
+
+        when(routeVersionRepository.findAll())
+                .thenReturn(Arrays.asList(routeVersion, otherRouteVersion));
+        when(routeRepository.findById(1L))
+                .thenReturn(Optional.of(route));
+        when(routeRepository.findById(2L))
+                .thenReturn(Optional.of(otherRoute));
+        when(routeVersionCabinetsRepository.findAllByRouteVersionId(10L))
+                .thenReturn(Arrays.asList(routeVersionCabinets));
+
+        Set<Long> result = cabinetService.getCabinetIds(null, 7L);
+
+        assertEquals(1, result.size());
+        assertEquals(true, result.contains(3L));
+        verify(routeVersionCabinetsRepository, never()).findAllByRouteVersionId(20L);
+    }
 }
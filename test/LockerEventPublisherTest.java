@@ -0,0 +1,151 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.dto.LockerStateEvent;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LockerEventPublisherTest {
+
+    private final Deque<SseEmitter> emitters = new ArrayDeque<>();
+    private final List<LockerEventPublisher> publishers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        publishers.forEach(LockerEventPublisher::shutdown);
+    }
+
+    private LockerEventPublisher createPublisher(int bufferSize, int historySize) {
+        LockerEventPublisher publisher = new LockerEventPublisher(bufferSize, historySize, 60000, 3) {
+            @Override
+            SseEmitter createEmitter() {
+                return emitters.poll();
+            }
+        };
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    private RecordingEmitter subscribe(LockerEventPublisher publisher, Long lastEventId, CountDownLatch release) {
+        RecordingEmitter emitter = new RecordingEmitter(release);
+        emitters.add(emitter);
+        publisher.subscribe(null, lastEventId);
+        return emitter;
+    }
+
+    private void publish(LockerEventPublisher publisher, int count) {
+        for (int i = 0; i < count; i++) {
+            publisher.publish(LockerStateEvent.lockerStatus(1L, (long) i, "LOCKER_STATE_INACTIVE", 0L));
+        }
+    }
+
+    @Test
+    public void testResumeInsideHistoryReplaysMissedEvents() throws InterruptedException {
+        LockerEventPublisher publisher = createPublisher(16, 16);
+        publish(publisher, 5);
+
+        RecordingEmitter emitter = subscribe(publisher, 3L, null);
+        publish(publisher, 1);
+
+        assertEquals(Long.valueOf(4L), emitter.next().getSequence());
+        assertEquals(Long.valueOf(5L), emitter.next().getSequence());
+        assertEquals(Long.valueOf(6L), emitter.next().getSequence());
+    }
+
+    @Test
+    public void testResumeOlderThanHistoryGetsReset() throws InterruptedException {
+        LockerEventPublisher publisher = createPublisher(16, 4);
+        publish(publisher, 10);
+
+        RecordingEmitter emitter = subscribe(publisher, 2L, null);
+
+        LockerStateEvent reset = emitter.next();
+        assertEquals(LockerStateEvent.RESET, reset.getType());
+        assertEquals(Long.valueOf(10L), reset.getSequence());
+        publish(publisher, 1);
+        assertEquals(Long.valueOf(11L), emitter.next().getSequence());
+    }
+
+    @Test
+    public void testResumeGapLargerThanBufferGetsReset() throws InterruptedException {
+        LockerEventPublisher publisher = createPublisher(2, 16);
+        publish(publisher, 5);
+
+        RecordingEmitter emitter = subscribe(publisher, 1L, null);
+
+        assertEquals(LockerStateEvent.RESET, emitter.next().getType());
+        assertEquals(1, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testSlowSubscriberIsClosedWhileOthersKeepReceiving() throws InterruptedException {
+        LockerEventPublisher publisher = createPublisher(2, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = subscribe(publisher, null, release);
+        RecordingEmitter fast = subscribe(publisher, null, null);
+
+        try {
+            for (long sequence = 1; sequence <= 5; sequence++) {
+                publish(publisher, 1);
+                assertEquals(Long.valueOf(sequence), fast.next().getSequence());
+            }
+            assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(1, publisher.getOverflowCount());
+            assertEquals(1, publisher.getSubscriberCount());
+
+            publish(publisher, 1);
+            assertEquals(Long.valueOf(6L), fast.next().getSequence());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    // records the events instead of writing them, optionally blocking every send until released
+    private static class RecordingEmitter extends SseEmitter {
+        private final BlockingQueue<LockerStateEvent> sent = new LinkedBlockingQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        private RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof LockerStateEvent) {
+                    sent.add((LockerStateEvent) data.getData());
+                }
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        private LockerStateEvent next() throws InterruptedException {
+            return sent.poll(5, TimeUnit.SECONDS);
+        }
+    }
+}
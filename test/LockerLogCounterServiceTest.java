@@ -0,0 +1,162 @@
+package ee.coop.delivery.service;
+
+import ee.coop.ECoop;
+import ee.coop.delivery.domain.Locker;
+import ee.coop.delivery.domain.LockerLog;
+import ee.coop.delivery.domain.LockerLogCounter;
+import ee.coop.delivery.repository.CabinetVersionRepository;
+import ee.coop.delivery.repository.LockerLogCounterRepository;
+import ee.coop.delivery.repository.LockerLogDailyRepository;
+import ee.coop.delivery.repository.LockerLogRepository;
+import ee.coop.delivery.repository.LockerReadRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class LockerLogCounterServiceTest {
+
+    @Mock
+    private LockerLogCounterRepository lockerLogCounterRepository;
+    @Mock
+    private LockerLogRepository lockerLogRepository;
+    @Mock
+    private LockerLogDailyRepository lockerLogDailyRepository;
+    @Mock
+    private LockerReadRepository lockerReadRepository;
+    @Mock
+    private CabinetVersionRepository cabinetVersionRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LockerLogCounterService lockerLogCounterService;
+
+    @Before
+    public void setUp() {
+        lockerLogCounterService = new LockerLogCounterService(lockerLogCounterRepository, lockerLogRepository,
+                lockerLogDailyRepository, lockerReadRepository, new CabinetVersions(cabinetVersionRepository), transactionManager, 2);
+    }
+
+    private LockerLog createLockerLog(Long lockerId, String status, String statusMaintenance, Long extCreatedAt) {
+        Locker locker = new Locker();
+        locker.setId(lockerId);
+        LockerLog lockerLog = new LockerLog();
+        lockerLog.setLocker(locker);
+        lockerLog.setStatus(status);
+        lockerLog.setStatusMaintenance(statusMaintenance);
+        lockerLog.setExtCreatedAt(extCreatedAt);
+        return lockerLog;
+    }
+
+    @Test
+    public void testRecordAddsOneDeltaPerLocker() {
+        List<LockerLog> logs = new ArrayList<>();
+        logs.add(createLockerLog(1L, ECoop.LOCKER_STATE_INACTIVE, null, 300L));
+        logs.add(createLockerLog(1L, ECoop.LOCKER_STATE_ACTIVE, "LOCKER_NEEDS_CLEANING", 100L));
+        logs.add(createLockerLog(1L, ECoop.LOCKER_STATE_INACTIVE, null, 200L));
+        logs.add(createLockerLog(2L, ECoop.LOCKER_STATE_ACTIVE, null, 50L));
+
+        lockerLogCounterService.record(logs);
+
+        verify(lockerLogCounterRepository).increment(1L, 3L, 2L, 1L, 300L);
+        verify(lockerLogCounterRepository).increment(2L, 1L, 0L, 0L, 50L);
+        verify(lockerLogCounterRepository, Mockito.times(2)).increment(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testReconcileLocksEachRangeBeforeCountingIt() {
+        when(lockerReadRepository.findMaxId()).thenReturn(3L);
+
+        lockerLogCounterService.reconcile();
+
+        InOrder inOrder = Mockito.inOrder(lockerLogCounterRepository, lockerLogRepository, transactionManager);
+        inOrder.verify(lockerLogCounterRepository).lockForReconcile();
+        inOrder.verify(lockerLogRepository).countGroupedByLockerBetween(anyString(), Mockito.eq(0L), Mockito.eq(1L));
+        inOrder.verify(lockerLogCounterRepository).findAllByLockerIdBetween(0L, 1L);
+        inOrder.verify(transactionManager).commit(any());
+        inOrder.verify(lockerLogCounterRepository).lockForReconcile();
+        inOrder.verify(lockerLogRepository).countGroupedByLockerBetween(anyString(), Mockito.eq(2L), Mockito.eq(3L));
+        inOrder.verify(lockerLogCounterRepository).findAllByLockerIdBetween(2L, 3L);
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testEmptyCountersAreSeededOnStartup() {
+        when(lockerReadRepository.findMaxId()).thenReturn(1L);
+        when(lockerLogRepository.countGroupedByLockerBetween(ECoop.LOCKER_STATE_INACTIVE, 0L, 1L)).thenReturn(Arrays.asList(
+                new LockerLogCounter(1L, 5L, 2L, 1L, 500L)));
+
+        lockerLogCounterService.seedIfEmpty();
+
+        ArgumentCaptor<List<LockerLogCounter>> saved = ArgumentCaptor.forClass(List.class);
+        verify(lockerLogCounterRepository).saveAll(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        assertEquals(Long.valueOf(5L), saved.getValue().get(0).getTotalCount());
+    }
+
+    @Test
+    public void testFilledCountersAreNotSeededAgain() {
+        when(lockerLogCounterRepository.count()).thenReturn(10L);
+
+        lockerLogCounterService.seedIfEmpty();
+
+        verify(lockerReadRepository, never()).findMaxId();
+        verify(lockerLogCounterRepository, never()).lockForReconcile();
+    }
+
+    @Test
+    public void testReconcileRepairsDriftedAndMissingCounters() {
+        when(lockerReadRepository.findMaxId()).thenReturn(1L);
+        lockerLogCounterService = new LockerLogCounterService(lockerLogCounterRepository, lockerLogRepository,
+                lockerLogDailyRepository, lockerReadRepository, new CabinetVersions(cabinetVersionRepository), transactionManager, 500);
+        when(lockerLogRepository.countGroupedByLockerBetween(ECoop.LOCKER_STATE_INACTIVE, 0L, 499L)).thenReturn(Arrays.asList(
+                new LockerLogCounter(1L, 5L, 2L, 1L, 500L),
+                new LockerLogCounter(2L, 3L, 0L, 0L, 300L),
+                new LockerLogCounter(3L, 1L, 1L, 0L, 100L)));
+        when(lockerLogDailyRepository.countGroupedByLockerBetween(0L, 499L)).thenReturn(Arrays.asList(
+                new LockerLogCounter(1L, 10L, 4L, 0L, 400L)));
+        when(lockerLogCounterRepository.findAllByLockerIdBetween(0L, 499L)).thenReturn(Arrays.asList(
+                // drifted total
+                new LockerLogCounter(1L, 14L, 6L, 1L, 500L),
+                // only the last change is stale
+                new LockerLogCounter(2L, 3L, 0L, 0L, 200L),
+                // already right
+                new LockerLogCounter(4L, 0L, 0L, 0L, 10L)));
+
+        lockerLogCounterService.reconcile();
+
+        ArgumentCaptor<List<LockerLogCounter>> saved = ArgumentCaptor.forClass(List.class);
+        verify(lockerLogCounterRepository).saveAll(saved.capture());
+        Map<Long, LockerLogCounter> byLocker = new HashMap<>();
+        for (LockerLogCounter counter : saved.getValue()) {
+            byLocker.put(counter.getLockerId(), counter);
+        }
+        assertEquals(3, byLocker.size());
+        assertEquals(Long.valueOf(15L), byLocker.get(1L).getTotalCount());
+        assertEquals(Long.valueOf(6L), byLocker.get(1L).getInactiveCount());
+        assertEquals(Long.valueOf(500L), byLocker.get(1L).getLastChangeAt());
+        assertEquals(Long.valueOf(300L), byLocker.get(2L).getLastChangeAt());
+        assertEquals(Long.valueOf(1L), byLocker.get(3L).getTotalCount());
+        verify(lockerLogCounterRepository, never()).increment(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+    }
+}
@@ -0,0 +1,141 @@
+package ee.coop.delivery.service;
+
+import ee.coop.ECoop;
+import ee.coop.delivery.domain.LockerLog;
+import ee.coop.delivery.domain.LockerLogDaily;
+import ee.coop.delivery.repository.LockerLogDailyRepository;
+import ee.coop.delivery.repository.LockerLogRepository;
+import ee.coop.utilites.DateTimeUtil;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class LockerLogRetentionServiceTest {
+
+    private static final long DAY = 86400000L;
+
+    @Mock
+    private LockerLogRepository lockerLogRepository;
+    @Mock
+    private LockerLogDailyRepository lockerLogDailyRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LockerLogRetentionService lockerLogRetentionService;
+    private long before;
+
+    @Before
+    public void setUp() {
+        lockerLogRetentionService = new LockerLogRetentionService(lockerLogRepository, lockerLogDailyRepository, transactionManager, 1);
+        before = new DateTime(DateTimeUtil.currentDate()).minusMonths(1).withDayOfMonth(1).getMillis();
+        when(lockerLogRepository.summarizeDaily(anyLong(), anyLong(), anyString())).thenReturn(Collections.emptyList());
+    }
+
+    private static long dayOf(long millis) {
+        return millis - millis % DAY;
+    }
+
+    private LockerLog createLockerLog(Long id, Long extCreatedAt) {
+        LockerLog lockerLog = new LockerLog();
+        lockerLog.setId(id);
+        lockerLog.setExtCreatedAt(extCreatedAt);
+        return lockerLog;
+    }
+
+    @Test
+    public void testSummarizesEachDayBeforeDeletingIt() {
+        long firstDay = dayOf(before - 1) - DAY;
+        LockerLog oldest = createLockerLog(10L, firstDay + 3600000L);
+        when(lockerLogRepository.findFirstByExtCreatedAtIsNotNullOrderByExtCreatedAtAsc()).thenReturn(oldest);
+        when(lockerLogRepository.summarizeDaily(firstDay, firstDay + DAY, ECoop.LOCKER_STATE_INACTIVE))
+                .thenReturn(Collections.singletonList(new LockerLogDaily(1L, 1L, firstDay, 2L, 1L, 0L)));
+        when(lockerLogRepository.summarizeDaily(firstDay + DAY, before, ECoop.LOCKER_STATE_INACTIVE))
+                .thenReturn(Collections.singletonList(new LockerLogDaily(1L, 1L, firstDay + DAY, 1L, 0L, 0L)));
+
+        lockerLogRetentionService.rollUpExpiredLogs();
+
+        InOrder inOrder = Mockito.inOrder(lockerLogRepository, lockerLogDailyRepository);
+        inOrder.verify(lockerLogRepository).summarizeDaily(firstDay, firstDay + DAY, ECoop.LOCKER_STATE_INACTIVE);
+        inOrder.verify(lockerLogDailyRepository).saveAll(anyList());
+        inOrder.verify(lockerLogRepository).deleteAllByExtCreatedAtInRange(firstDay, firstDay + DAY);
+        inOrder.verify(lockerLogRepository).summarizeDaily(firstDay + DAY, before, ECoop.LOCKER_STATE_INACTIVE);
+        inOrder.verify(lockerLogDailyRepository).saveAll(anyList());
+        inOrder.verify(lockerLogRepository).deleteAllByExtCreatedAtInRange(firstDay + DAY, before);
+        verify(lockerLogRepository, never()).summarizeDaily(Mockito.eq(before), anyLong(), anyString());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    public void testFailedDayKeepsDaysBeforeIt() {
+        long firstDay = dayOf(before - 1) - DAY;
+        when(lockerLogRepository.findFirstByExtCreatedAtIsNotNullOrderByExtCreatedAtAsc())
+                .thenReturn(createLockerLog(10L, firstDay));
+        when(lockerLogRepository.summarizeDaily(firstDay, firstDay + DAY, ECoop.LOCKER_STATE_INACTIVE))
+                .thenReturn(Collections.singletonList(new LockerLogDaily(1L, 1L, firstDay, 2L, 1L, 0L)));
+        when(lockerLogRepository.summarizeDaily(firstDay + DAY, before, ECoop.LOCKER_STATE_INACTIVE))
+                .thenThrow(new IllegalStateException("deadlock"));
+
+        try {
+            lockerLogRetentionService.rollUpExpiredLogs();
+            fail();
+        } catch (IllegalStateException expected) {
+            // the second day failed
+        }
+
+        verify(lockerLogRepository).deleteAllByExtCreatedAtInRange(firstDay, firstDay + DAY);
+        verify(transactionManager, times(1)).commit(any());
+        verify(transactionManager, times(1)).rollback(any());
+    }
+
+    @Test
+    public void testEmptyDayIsNotDeleted() {
+        long firstDay = dayOf(before - 1);
+        when(lockerLogRepository.findFirstByExtCreatedAtIsNotNullOrderByExtCreatedAtAsc())
+                .thenReturn(createLockerLog(10L, firstDay));
+
+        lockerLogRetentionService.rollUpExpiredLogs();
+
+        verify(lockerLogRepository).summarizeDaily(firstDay, before, ECoop.LOCKER_STATE_INACTIVE);
+        verify(lockerLogDailyRepository, never()).saveAll(anyList());
+        verify(lockerLogRepository, never()).deleteAllByExtCreatedAtInRange(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testNothingExpired() {
+        when(lockerLogRepository.findFirstByExtCreatedAtIsNotNullOrderByExtCreatedAtAsc())
+                .thenReturn(createLockerLog(10L, before));
+
+        lockerLogRetentionService.rollUpExpiredLogs();
+
+        verify(lockerLogRepository, never()).summarizeDaily(anyLong(), anyLong(), anyString());
+        verify(lockerLogRepository, never()).deleteAllByExtCreatedAtInRange(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testLegacyRowsWithoutTimestampAreLeftAlone() {
+        lockerLogRetentionService.rollUpExpiredLogs();
+
+        verify(lockerLogRepository, never()).summarizeDaily(anyLong(), anyLong(), anyString());
+        verify(lockerLogRepository, never()).deleteAllByExtCreatedAtInRange(anyLong(), anyLong());
+        verify(transactionManager, never()).getTransaction(any());
+    }
+}
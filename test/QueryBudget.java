@@ -0,0 +1,43 @@
+package ee.coop.delivery.service;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Fails a test when the code under test makes more repository calls than budgeted.
+ * Counts the invocations recorded on the given repository mocks.
+ */
+public class QueryBudget {
+
+    private final Object[] repositories;
+
+    private QueryBudget(Object[] repositories) {
+        this.repositories = repositories;
+    }
+
+    public static QueryBudget of(Object... repositories) {
+        return new QueryBudget(repositories);
+    }
+
+    /**
+     * Runs the action and asserts it made at most the given number of repository calls
+     */
+    public void assertAtMost(int maxQueries, Runnable action) {
+        Mockito.clearInvocations(repositories);
+        action.run();
+        List<String> calls = new ArrayList<>();
+        for (Object repository : repositories) {
+            for (Invocation invocation : Mockito.mockingDetails(repository).getInvocations()) {
+                calls.add(invocation.getMock().getClass().getSimpleName().split("\\$")[0] + "." + invocation.getMethod().getName());
+            }
+        }
+        if (calls.size() > maxQueries) {
+            fail(String.format("Expected at most %d repository calls but was %d: %s", maxQueries, calls.size(), calls));
+        }
+    }
+}
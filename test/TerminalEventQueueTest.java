@@ -0,0 +1,171 @@
+package ee.coop.delivery.service;
+
+import ee.coop.adapter.strongpoint.SpTerminalEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TerminalEventQueueTest {
+
+    @Mock
+    private CabinetService cabinetService;
+
+    private TerminalEventQueue queue;
+
+    @Before
+    public void setUp() {
+        queue = new TerminalEventQueue(cabinetService, 1, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.shutdown();
+    }
+
+    private SpTerminalEvent createTerminalEvent(String terminalId) {
+        SpTerminalEvent spTerminalEvent = new SpTerminalEvent();
+        spTerminalEvent.setTerminalId(terminalId);
+        spTerminalEvent.setIsDeleted(false);
+
+        return spTerminalEvent;
+    }
+
+    @Test
+    public void testSupersededSnapshotsAreCoalesced() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SpTerminalEvent first = createTerminalEvent("T1");
+        SpTerminalEvent second = createTerminalEvent("T1");
+        SpTerminalEvent third = createTerminalEvent("T1");
+
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) == first) {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(cabinetService).updateLockers(any(SpTerminalEvent.class));
+
+        assertTrue(queue.offer(first));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.offer(second));
+        assertTrue(queue.offer(third));
+        assertEquals(1, queue.getQueueDepth());
+
+        release.countDown();
+
+        verify(cabinetService, timeout(5000)).updateLockers(first);
+        verify(cabinetService, timeout(5000)).updateLockers(third);
+        verify(cabinetService, never()).updateLockers(second);
+        assertEquals(1.0 / 3, queue.getCoalesceRatio(), 0.0001);
+    }
+
+    @Test
+    public void testFullQueueRejectsOtherTerminals() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SpTerminalEvent blocking = createTerminalEvent("T1");
+
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) == blocking) {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(cabinetService).updateLockers(any(SpTerminalEvent.class));
+
+        assertTrue(queue.offer(blocking));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.offer(createTerminalEvent("T2")));
+        assertFalse(queue.offer(createTerminalEvent("T3")));
+        assertEquals(1, queue.getRejectedCount());
+
+        release.countDown();
+    }
+
+    @Test
+    public void testConcurrentOffersDoNotPassCapacity() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SpTerminalEvent blocking = createTerminalEvent("T0");
+
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) == blocking) {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(cabinetService).updateLockers(any(SpTerminalEvent.class));
+
+        assertTrue(queue.offer(blocking));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        int threads = 8;
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger accepted = new AtomicInteger();
+        for (int i = 1; i <= threads; i++) {
+            SpTerminalEvent event = createTerminalEvent("T" + i);
+            new Thread(() -> {
+                try {
+                    go.await(5, TimeUnit.SECONDS);
+                    if (queue.offer(event)) {
+                        accepted.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        go.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, accepted.get());
+        assertEquals(1, queue.getQueueDepth());
+        assertEquals(threads - 1, queue.getRejectedCount());
+
+        release.countDown();
+    }
+
+    @Test
+    public void testErrorDoesNotKeepTerminalScheduled() throws Exception {
+        SpTerminalEvent failing = createTerminalEvent("T1");
+        SpTerminalEvent next = createTerminalEvent("T1");
+        CountDownLatch failed = new CountDownLatch(1);
+
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) == failing) {
+                failed.countDown();
+                throw new StackOverflowError();
+            }
+            return null;
+        }).when(cabinetService).updateLockers(any(SpTerminalEvent.class));
+
+        assertTrue(queue.offer(failing));
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        assertTrue(queue.offer(next));
+
+        verify(cabinetService, timeout(5000)).updateLockers(next);
+        assertEquals(0, queue.getQueueDepth());
+    }
+}
@@ -0,0 +1,124 @@
+package ee.coop.delivery.service;
+
+import ee.coop.adapter.strongpoint.SpBox;
+import ee.coop.adapter.strongpoint.SpTerminalEvent;
+import ee.coop.delivery.domain.TerminalSnapshot;
+import ee.coop.delivery.repository.TerminalSnapshotRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TerminalSnapshotServiceTest {
+
+    @Mock
+    private TerminalSnapshotRepository terminalSnapshotRepository;
+
+    private TerminalSnapshotService terminalSnapshotService;
+
+    @Before
+    public void setUp() {
+        terminalSnapshotService = new TerminalSnapshotService(terminalSnapshotRepository);
+    }
+
+    private SpTerminalEvent createTerminalEvent(boolean isDeleted, boolean... disabled) {
+        List<SpBox> boxes = new ArrayList<>();
+        for (int i = 0; i < disabled.length; i++) {
+            SpBox box = new SpBox();
+            box.setBoxIndex((long) i + 1);
+            box.setIsDisabled(disabled[i]);
+            box.setTempMode(2L);
+            boxes.add(box);
+        }
+        SpTerminalEvent event = new SpTerminalEvent();
+        event.setTerminalId("T1");
+        event.setIsDeleted(isDeleted);
+        event.setBoxes(boxes);
+        return event;
+    }
+
+    @Test
+    public void testFingerprintFollowsBoxesAndDeletedFlag() {
+        long fingerprint = TerminalSnapshotService.fingerprint(createTerminalEvent(false, false, true, false));
+
+        assertEquals(fingerprint, TerminalSnapshotService.fingerprint(createTerminalEvent(false, false, true, false)));
+        assertNotEquals(fingerprint, TerminalSnapshotService.fingerprint(createTerminalEvent(false, false, false, false)));
+        assertNotEquals(fingerprint, TerminalSnapshotService.fingerprint(createTerminalEvent(true, false, true, false)));
+
+        SpTerminalEvent otherTempMode = createTerminalEvent(false, false, true, false);
+        otherTempMode.getBoxes().get(2).setTempMode(3L);
+        assertNotEquals(fingerprint, TerminalSnapshotService.fingerprint(otherTempMode));
+    }
+
+    @Test
+    public void testAppliedFingerprintIsSkippedUntilInvalidated() {
+        long fingerprint = TerminalSnapshotService.fingerprint(createTerminalEvent(false, true));
+        assertFalse(terminalSnapshotService.isUnchanged("T1", fingerprint));
+
+        terminalSnapshotService.applied("T1", fingerprint);
+
+        assertTrue(terminalSnapshotService.isUnchanged("T1", fingerprint));
+        assertFalse(terminalSnapshotService.isUnchanged("T1", fingerprint + 1));
+        assertEquals(1, terminalSnapshotService.getSkippedCount());
+        verify(terminalSnapshotRepository).upsert(eq("T1"), eq(fingerprint), anyLong());
+
+        terminalSnapshotService.invalidate("T1");
+
+        assertFalse(terminalSnapshotService.isUnchanged("T1", fingerprint));
+        verify(terminalSnapshotRepository).deleteByTerminalId("T1");
+    }
+
+    @Test
+    public void testPreloadRestoresPersistedFingerprints() {
+        when(terminalSnapshotRepository.findAll())
+                .thenReturn(Arrays.asList(new TerminalSnapshot("T1", 42L, 0L)));
+
+        terminalSnapshotService.preload();
+
+        assertTrue(terminalSnapshotService.isUnchanged("T1", 42L));
+    }
+
+    @Test
+    public void testSkipIsAnsweredFromMemory() {
+        terminalSnapshotService.applied("T1", 42L);
+
+        assertTrue(terminalSnapshotService.isUnchanged("T1", 42L));
+        assertTrue(terminalSnapshotService.isUnchanged("T1", 42L));
+        verify(terminalSnapshotRepository, never()).findAll();
+    }
+
+    @Test
+    public void testSyncDropsFingerprintsChangedOnAnotherInstance() {
+        terminalSnapshotService.applied("T1", 42L);
+        terminalSnapshotService.applied("T2", 43L);
+        terminalSnapshotService.applied("T3", 44L);
+        // T1 was invalidated and T2 applied with another event on another instance
+        when(terminalSnapshotRepository.findAll()).thenReturn(Arrays.asList(
+                new TerminalSnapshot("T2", 50L, 0L), new TerminalSnapshot("T3", 44L, 0L), new TerminalSnapshot("T4", 45L, 0L)));
+
+        terminalSnapshotService.sync();
+
+        assertFalse(terminalSnapshotService.isUnchanged("T1", 42L));
+        assertFalse(terminalSnapshotService.isUnchanged("T2", 43L));
+        assertFalse(terminalSnapshotService.isUnchanged("T2", 50L));
+        assertTrue(terminalSnapshotService.isUnchanged("T3", 44L));
+        assertFalse(terminalSnapshotService.isUnchanged("T4", 45L));
+        assertEquals(2, terminalSnapshotService.getDroppedCount());
+    }
+}
@@ -0,0 +1,208 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.domain.Cabinet;
+import ee.coop.delivery.domain.RouteVersion;
+import ee.coop.delivery.domain.TimeSlotConfig;
+import ee.coop.delivery.domain.TimeSlotsPerDay;
+import ee.coop.delivery.dto.TimeSlotBookingCount;
+import ee.coop.delivery.repository.DeliveryReadRepository;
+import ee.coop.delivery.repository.RouteVersionRepository;
+import ee.coop.delivery.repository.TimeSlotConfigReadRepository;
+import ee.coop.delivery.repository.TimeSlotConfigRepository;
+import ee.coop.delivery.repository.TimeSlotTakenRepository;
+import ee.coop.utilites.DateTimeUtil;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TimeSlotCalendarTest {
+
+    @Mock
+    private TimeSlotConfigRepository timeSlotConfigRepository;
+    @Mock
+    private TimeSlotConfigReadRepository timeSlotConfigReadRepository;
+    @Mock
+    private RouteVersionRepository routeVersionRepository;
+    @Mock
+    private DeliveryReadRepository deliveryReadRepository;
+    @Mock
+    private TimeSlotTakenRepository timeSlotTakenRepository;
+
+    private TimeSlotCalendar timeSlotCalendar;
+    private Long today;
+    private Long tomorrow;
+
+    @Before
+    public void setUp() {
+        timeSlotCalendar = new TimeSlotCalendar(timeSlotConfigRepository, timeSlotConfigReadRepository, routeVersionRepository,
+                new TimeSlotCapacity(deliveryReadRepository, timeSlotTakenRepository, 600, new String[]{"DELIVERY_STATUS_CANCELLED"}), 14);
+        today = DateTimeUtil.currentDate();
+        tomorrow = new DateTime(today).plusDays(1).getMillis();
+    }
+
+    private TimeSlotConfig createTimeSlot(Long id, Long routeVersionId, Integer maxOrders) {
+        TimeSlotConfig timeSlotConfig = new TimeSlotConfig();
+        timeSlotConfig.setId(id);
+        timeSlotConfig.setStartTime(1598947200000L);
+        timeSlotConfig.setEndTime(1598950800000L);
+        timeSlotConfig.setDeliveryFee(BigDecimal.valueOf(3));
+        timeSlotConfig.setRouteVersionId(routeVersionId);
+        timeSlotConfig.setMaxOrders(maxOrders);
+
+        return timeSlotConfig;
+    }
+
+    private RouteVersion createRouteVersion(Long id, Long validFrom, Long validUntil) {
+        RouteVersion routeVersion = new RouteVersion();
+        routeVersion.setId(id);
+        routeVersion.setValidFrom(validFrom);
+        routeVersion.setValidUntil(validUntil);
+
+        return routeVersion;
+    }
+
+    @Test
+    public void testCalendarIsBuiltOnceAndOverlaysCapacity() {
+        List<TimeSlotConfig> timeSlotConfigs = new ArrayList<>();
+        timeSlotConfigs.add(createTimeSlot(1L, 1L, 2));
+        timeSlotConfigs.add(createTimeSlot(2L, 2L, 2));
+        when(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(1L)).thenReturn(timeSlotConfigs);
+        // route version 2 only becomes valid tomorrow
+        when(routeVersionRepository.findAllById(any())).thenReturn(Arrays.asList(
+                createRouteVersion(1L, today, null), createRouteVersion(2L, tomorrow, null)));
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any()))
+                .thenReturn(Arrays.asList(new TimeSlotBookingCount(tomorrow, 2L, 2L)));
+
+        timeSlotCalendar.getTimeSlotsForPeriod(1L, 7);
+        List<TimeSlotsPerDay> result = timeSlotCalendar.getTimeSlotsForPeriod(1L, 2);
+
+        assertEquals(2, result.size());
+        assertEquals(today, result.get(0).getDate());
+        assertEquals(1, result.get(0).getTimeSlots().size());
+        assertEquals(TimeSlotCalendar.STATUS_AVAILABLE, result.get(0).getTimeSlots().get(0).getStatus());
+        assertEquals(2, result.get(1).getTimeSlots().size());
+        assertEquals(TimeSlotCalendar.STATUS_UNAVAILABLE, result.get(1).getTimeSlots().get(1).getStatus());
+
+        assertEquals(1, timeSlotCalendar.getBuildCount());
+        verify(timeSlotConfigRepository, times(1)).findAllByCabinetIdOrderByStartTime(1L);
+        verify(routeVersionRepository, times(1)).findAllById(any());
+        verify(deliveryReadRepository, times(1)).countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testChangedConfigsRebuildCalendar() {
+        when(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(1L))
+                .thenReturn(Arrays.asList(createTimeSlot(1L, null, null)));
+
+        timeSlotCalendar.getTimeSlotsForPeriod(1L, 1);
+        timeSlotCalendar.timeSlotConfigsChanged(1L);
+        List<TimeSlotsPerDay> result = timeSlotCalendar.getTimeSlotsForPeriod(1L, 1);
+
+        assertEquals(1, result.get(0).getTimeSlots().size());
+        assertEquals(2, timeSlotCalendar.getBuildCount());
+    }
+
+    @Test
+    public void testExpiredCalendarIsRebuilt() {
+        when(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(1L))
+                .thenReturn(Arrays.asList(createTimeSlot(1L, null, null)));
+
+        timeSlotCalendar.getTimeSlotsForPeriod(1L, 1);
+        timeSlotCalendar.expireCalendars();
+        timeSlotCalendar.getTimeSlotsForPeriod(1L, 1);
+
+        assertEquals(2, timeSlotCalendar.getBuildCount());
+    }
+
+    @Test
+    public void testNegativePeriod() {
+        assertEquals(0, timeSlotCalendar.getTimeSlotsForPeriod(1L, -3).size());
+        assertEquals(0, timeSlotCalendar.getBuildCount());
+    }
+
+    @Test
+    public void testPeriodIsCappedAtWindow() {
+        when(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(1L))
+                .thenReturn(Arrays.asList(createTimeSlot(1L, null, null)));
+
+        assertEquals(14, timeSlotCalendar.getTimeSlotsForPeriod(1L, 100000).size());
+        assertEquals(14, timeSlotCalendar.getTimeSlotsForPeriod(1L, 15).size());
+        assertEquals(1, timeSlotCalendar.getBuildCount());
+    }
+
+    @Test
+    public void testBatchUsesConstantNumberOfQueries() {
+        List<TimeSlotConfig> timeSlotConfigs = new ArrayList<>();
+        List<Long> cabinetIds = new ArrayList<>();
+        for (long cabinetId = 1; cabinetId <= 50; cabinetId++) {
+            Cabinet cabinet = new Cabinet();
+            cabinet.setId(cabinetId);
+            TimeSlotConfig timeSlotConfig = createTimeSlot(cabinetId, 1L, 5);
+            timeSlotConfig.setCabinet(cabinet);
+            timeSlotConfigs.add(timeSlotConfig);
+            cabinetIds.add(cabinetId);
+        }
+        when(timeSlotConfigReadRepository.findAllByCabinetIdInOrderByStartTime(any())).thenReturn(timeSlotConfigs);
+        when(routeVersionRepository.findAllById(any())).thenReturn(Arrays.asList(createRouteVersion(1L, today, null)));
+
+        Map<Long, List<TimeSlotsPerDay>> result = timeSlotCalendar.getTimeSlotsForCabinets(cabinetIds, today, tomorrow);
+
+        assertEquals(50, result.size());
+        assertEquals(2, result.get(7L).size());
+        assertEquals(Long.valueOf(7L), result.get(7L).get(0).getTimeSlots().get(0).getTimeSlotConfigId());
+        verify(timeSlotConfigReadRepository, times(1)).findAllByCabinetIdInOrderByStartTime(any());
+        verify(routeVersionRepository, times(1)).findAllById(any());
+        verify(deliveryReadRepository, times(1)).countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any());
+        verify(timeSlotConfigRepository, times(0)).findAllByCabinetIdOrderByStartTime(anyLong());
+    }
+
+    @Test
+    public void testInstancesCarryTimesOfTheirDay() {
+        when(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(1L))
+                .thenReturn(Arrays.asList(createTimeSlot(1L, null, null)));
+
+        List<TimeSlotsPerDay> result = timeSlotCalendar.getTimeSlotsForPeriod(1L, 2);
+
+        int startOfDay = new DateTime(1598947200000L).getMillisOfDay();
+        int endOfDay = new DateTime(1598950800000L).getMillisOfDay();
+        assertEquals(Long.valueOf(new DateTime(today).withMillisOfDay(startOfDay).getMillis()),
+                result.get(0).getTimeSlots().get(0).getStartTime());
+        assertEquals(Long.valueOf(new DateTime(tomorrow).withMillisOfDay(startOfDay).getMillis()),
+                result.get(1).getTimeSlots().get(0).getStartTime());
+        assertEquals(Long.valueOf(new DateTime(tomorrow).withMillisOfDay(endOfDay).getMillis()),
+                result.get(1).getTimeSlots().get(0).getEndTime());
+    }
+
+    @Test
+    public void testRouteVersionValidFromLaterTodayCoversToday() {
+        Long todayAtTen = new DateTime(today).plusHours(10).getMillis();
+        Long tomorrowAtTen = new DateTime(tomorrow).plusHours(10).getMillis();
+        when(timeSlotConfigRepository.findAllByCabinetIdOrderByStartTime(1L))
+                .thenReturn(Arrays.asList(createTimeSlot(1L, 1L, null)));
+        when(routeVersionRepository.findAllById(any()))
+                .thenReturn(Arrays.asList(createRouteVersion(1L, todayAtTen, tomorrowAtTen)));
+
+        List<TimeSlotsPerDay> result = timeSlotCalendar.getTimeSlotsForPeriod(1L, 3);
+
+        assertEquals(1, result.get(0).getTimeSlots().size());
+        assertEquals(1, result.get(1).getTimeSlots().size());
+        assertEquals(0, result.get(2).getTimeSlots().size());
+    }
+}
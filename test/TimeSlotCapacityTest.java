@@ -0,0 +1,282 @@
+package ee.coop.delivery.service;
+
+import ee.coop.delivery.domain.TimeSlotConfig;
+import ee.coop.delivery.dto.TimeSlotBookingCount;
+import ee.coop.delivery.repository.DeliveryReadRepository;
+import ee.coop.delivery.repository.TimeSlotTakenRepository;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TimeSlotCapacityTest {
+
+    private static final Long DAY_1 = new DateTime(2020, 9, 1, 0, 0).getMillis();
+    private static final Long DAY_2 = new DateTime(2020, 9, 2, 0, 0).getMillis();
+    private static final String[] RELEASED_STATUSES = {"DELIVERY_STATUS_CANCELLED"};
+
+    @Mock
+    private DeliveryReadRepository deliveryReadRepository;
+    @Mock
+    private TimeSlotTakenRepository timeSlotTakenRepository;
+
+    private TimeSlotCapacity timeSlotCapacity;
+    // the shared capacity row of DAY_1 and slot 1, -1 until it is inserted
+    private final AtomicLong capacityRow = new AtomicLong(-1);
+    private final AtomicLong confirmedInDatabase = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        timeSlotCapacity = new TimeSlotCapacity(deliveryReadRepository, timeSlotTakenRepository, 600, RELEASED_STATUSES);
+    }
+
+    // backs the repositories with one capacity row and a delivery count that includes every confirmed booking
+    private void stubDatabase(long bookedBefore) {
+        when(timeSlotTakenRepository.take(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            Long maxOrders = invocation.getArgument(2);
+            long previous = capacityRow.getAndUpdate(taken -> taken >= 0 && taken < maxOrders ? taken + 1 : taken);
+            if (previous < 0 || previous >= maxOrders) {
+                return 0;
+            }
+            confirmedInDatabase.incrementAndGet();
+            return 1;
+        });
+        when(timeSlotTakenRepository.insertIfAbsent(anyLong(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> capacityRow.compareAndSet(-1, invocation.getArgument(2)) ? 1 : 0);
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any())).thenAnswer(invocation ->
+                Arrays.asList(new TimeSlotBookingCount(DAY_1, 1L, bookedBefore + confirmedInDatabase.get())));
+    }
+
+    private TimeSlotConfig createTimeSlot(Long id, Integer maxOrders) {
+        TimeSlotConfig timeSlotConfig = new TimeSlotConfig();
+        timeSlotConfig.setId(id);
+        timeSlotConfig.setMaxOrders(maxOrders);
+
+        return timeSlotConfig;
+    }
+
+    @Test
+    public void testSeedLoadsWindowWithOneQuery() {
+        List<TimeSlotBookingCount> counts = new ArrayList<>();
+        counts.add(new TimeSlotBookingCount(DAY_1, 1L, 3L));
+        counts.add(new TimeSlotBookingCount(DAY_2, 2L, 1L));
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any())).thenReturn(counts);
+
+        timeSlotCapacity.seed(Arrays.asList(1L, 2L), DAY_1, DAY_2);
+        timeSlotCapacity.seed(Arrays.asList(1L, 2L), DAY_1, DAY_2);
+
+        assertEquals(4, timeSlotCapacity.size());
+        assertEquals(3L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertEquals(0L, timeSlotCapacity.getBookedCount(DAY_2, 1L));
+        assertEquals(1L, timeSlotCapacity.getBookedCount(DAY_2, 2L));
+        assertFalse(timeSlotCapacity.isAvailable(createTimeSlot(1L, 3), DAY_1));
+        assertTrue(timeSlotCapacity.isAvailable(createTimeSlot(2L, 3), DAY_2));
+        verify(deliveryReadRepository, times(1)).countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testCreatedAndCancelledDeliveriesMoveCounter() {
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+
+        timeSlotCapacity.deliveryCreated(DAY_1, 1L);
+        timeSlotCapacity.deliveryCreated(DAY_1, 1L);
+        timeSlotCapacity.deliveryCancelled(DAY_1, 1L);
+
+        assertEquals(1L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertTrue(timeSlotCapacity.isAvailable(createTimeSlot(1L, 2), DAY_1));
+        assertTrue(timeSlotCapacity.isAvailable(createTimeSlot(1L, null), DAY_1));
+    }
+
+    @Test
+    public void testDeliveryCreatedWhileSeedingIsCounted() {
+        // the delivery commits after the grouped count was read, so the count does not include it
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any())).thenAnswer(invocation -> {
+            timeSlotCapacity.deliveryCreated(DAY_1, 1L);
+            return Arrays.asList(new TimeSlotBookingCount(DAY_1, 1L, 2L));
+        });
+
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+
+        assertEquals(3L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertFalse(timeSlotCapacity.isAvailable(createTimeSlot(1L, 3), DAY_1));
+    }
+
+    @Test
+    public void testReaderWaitsForSeedInProgress() throws Exception {
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any())).thenAnswer(invocation -> {
+            querying.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return Arrays.asList(new TimeSlotBookingCount(DAY_1, 1L, 5L));
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> seeding = executor.submit(() -> timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1));
+        assertTrue(querying.await(10, TimeUnit.SECONDS));
+        Future<Long> reading = executor.submit(() -> timeSlotCapacity.getBookedCount(DAY_1, 1L));
+
+        release.countDown();
+        seeding.get(10, TimeUnit.SECONDS);
+
+        assertEquals(Long.valueOf(5L), reading.get(10, TimeUnit.SECONDS));
+        verify(deliveryReadRepository, times(1)).countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSeedCountsOnlyBookedDeliveries() {
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+
+        verify(deliveryReadRepository).countBookingsByDateAndTimeSlot(Arrays.asList(1L), DAY_1, DAY_1,
+                Arrays.asList(RELEASED_STATUSES));
+    }
+
+    @Test
+    public void testReseedCorrectsBookingsAndKeepsHolds() {
+        TimeSlotConfig timeSlotConfig = createTimeSlot(1L, 5);
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any()))
+                .thenReturn(Arrays.asList(new TimeSlotBookingCount(DAY_1, 1L, 3L)));
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+        assertNotNull(timeSlotCapacity.hold(timeSlotConfig, DAY_1));
+
+        // another instance booked one place and a cancellation was subtracted twice
+        timeSlotCapacity.deliveryCancelled(DAY_1, 1L);
+        when(deliveryReadRepository.countBookingsByDateAndTimeSlot(any(), anyLong(), anyLong(), any()))
+                .thenReturn(Arrays.asList(new TimeSlotBookingCount(DAY_1, 1L, 4L)));
+        timeSlotCapacity.reseed();
+
+        assertEquals(4L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertEquals(1L, timeSlotCapacity.getHeldCount(DAY_1, 1L));
+        assertFalse(timeSlotCapacity.isAvailable(timeSlotConfig, DAY_1));
+    }
+
+    @Test
+    public void testConcurrentHoldsNeverOverbook() throws Exception {
+        TimeSlotConfig timeSlotConfig = createTimeSlot(1L, 50);
+        stubDatabase(10L);
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+
+        int threads = 16;
+        int attemptsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Callable<List<String>> checkout = () -> {
+                List<String> holdIds = new ArrayList<>();
+                start.await();
+                for (int attempt = 0; attempt < attemptsPerThread; attempt++) {
+                    String holdId = timeSlotCapacity.hold(timeSlotConfig, DAY_1);
+                    if (holdId == null) {
+                        continue;
+                    }
+                    // every other customer abandons the checkout
+                    if (attempt % 2 == 0) {
+                        timeSlotCapacity.release(holdId);
+                    } else if (timeSlotCapacity.confirm(holdId)) {
+                        holdIds.add(holdId);
+                    }
+                }
+                return holdIds;
+            };
+            results.add(executor.submit(checkout));
+        }
+        start.countDown();
+
+        int confirmed = 0;
+        for (Future<List<String>> result : results) {
+            confirmed += result.get(30, TimeUnit.SECONDS).size();
+        }
+        executor.shutdown();
+
+        assertEquals(40, confirmed);
+        assertEquals(40L, confirmedInDatabase.get());
+        assertEquals(50L, capacityRow.get());
+        assertEquals(50L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertEquals(0L, timeSlotCapacity.getHeldCount(DAY_1, 1L));
+        assertFalse(timeSlotCapacity.isAvailable(timeSlotConfig, DAY_1));
+        assertNull(timeSlotCapacity.hold(timeSlotConfig, DAY_1));
+    }
+
+    @Test
+    public void testConfirmFailsWhenSharedRowIsFull() {
+        TimeSlotConfig timeSlotConfig = createTimeSlot(1L, 2);
+        stubDatabase(1L);
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+        String holdId = timeSlotCapacity.hold(timeSlotConfig, DAY_1);
+        assertNotNull(holdId);
+
+        // another instance booked the last place in the meantime
+        capacityRow.set(2L);
+
+        assertFalse(timeSlotCapacity.confirm(holdId));
+        assertEquals(2L, capacityRow.get());
+        assertEquals(1L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertEquals(0L, timeSlotCapacity.getHeldCount(DAY_1, 1L));
+        assertEquals(1L, timeSlotCapacity.getOversoldHoldCount());
+    }
+
+    @Test
+    public void testFirstConfirmOfDayStartsSharedRowFromDeliveries() {
+        TimeSlotConfig timeSlotConfig = createTimeSlot(1L, 2);
+        stubDatabase(1L);
+        String holdId = timeSlotCapacity.hold(timeSlotConfig, DAY_1);
+
+        assertTrue(timeSlotCapacity.confirm(holdId));
+        assertEquals(2L, capacityRow.get());
+        verify(timeSlotTakenRepository).insertIfAbsent(DAY_1, 1L, 1L);
+        verify(timeSlotTakenRepository, times(2)).take(DAY_1, 1L, 2L);
+    }
+
+    @Test
+    public void testCancelGivesBackSharedRow() {
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+
+        timeSlotCapacity.deliveryCancelled(DAY_1, 1L);
+
+        verify(timeSlotTakenRepository).giveBack(DAY_1, 1L);
+    }
+
+    @Test
+    public void testExpiredHoldsAreReleased() {
+        timeSlotCapacity = new TimeSlotCapacity(deliveryReadRepository, timeSlotTakenRepository, 0, RELEASED_STATUSES);
+        TimeSlotConfig timeSlotConfig = createTimeSlot(1L, 1);
+        timeSlotCapacity.seed(Arrays.asList(1L), DAY_1, DAY_1);
+
+        String holdId = timeSlotCapacity.hold(timeSlotConfig, DAY_1);
+        assertNotNull(holdId);
+        assertFalse(timeSlotCapacity.isAvailable(timeSlotConfig, DAY_1));
+
+        timeSlotCapacity.sweepExpiredHolds();
+
+        assertFalse(timeSlotCapacity.confirm(holdId));
+        assertTrue(timeSlotCapacity.isAvailable(timeSlotConfig, DAY_1));
+        assertEquals(0L, timeSlotCapacity.getBookedCount(DAY_1, 1L));
+        assertEquals(1L, timeSlotCapacity.getExpiredHoldCount());
+    }
+}
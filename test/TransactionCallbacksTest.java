@@ -0,0 +1,71 @@
+package ee.coop.delivery.service;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionCallbacksTest {
+
+    private final List<String> ran = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    @Test
+    public void testRunsRightAwayOutsideOfTransaction() {
+        TransactionCallbacks.afterCommit(() -> ran.add("commit"));
+        TransactionCallbacks.afterCompletion(() -> ran.add("committed"), () -> ran.add("rolled back"));
+
+        assertEquals(2, ran.size());
+        assertEquals("commit", ran.get(0));
+        assertEquals("committed", ran.get(1));
+    }
+
+    @Test
+    public void testRunsAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionCallbacks.afterCommit(() -> ran.add("commit"));
+        TransactionCallbacks.afterCompletion(() -> ran.add("committed"), () -> ran.add("rolled back"));
+        assertTrue(ran.isEmpty());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(2, ran.size());
+        assertEquals("commit", ran.get(0));
+        assertEquals("committed", ran.get(1));
+    }
+
+    @Test
+    public void testRollbackOnlyRunsRolledBackAction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionCallbacks.afterCommit(() -> ran.add("commit"));
+        TransactionCallbacks.afterCompletion(() -> ran.add("committed"), () -> ran.add("rolled back"));
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(1, ran.size());
+        assertEquals("rolled back", ran.get(0));
+    }
+}
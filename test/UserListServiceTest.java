@@ -0,0 +1,53 @@
+package ee.coop.core.service;
+
+import ee.coop.core.repository.UserRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class UserListServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserListService userListService;
+
+    @Before
+    public void setUp() {
+        userListService = new UserListService(userRepository);
+    }
+
+    @Test
+    public void testFirstPageWithoutFilters() {
+        userListService.getUsers(null, "", null, null, null, 10000);
+
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        verify(userRepository).findRowsAfter(eq(0L), isNull(), isNull(), isNull(), isNull(), page.capture());
+        assertEquals(UserListService.MAX_PAGE_SIZE, page.getValue().getPageSize());
+    }
+
+    @Test
+    public void testNextPageWithFilters() {
+        userListService.getUsers(42L, "ROLE_COURIER", true, "et", "mari", 50);
+
+        verify(userRepository).findRowsAfter(eq(42L), eq("ROLE_COURIER"), eq(true), eq("et"), eq("mari%"), any(Pageable.class));
+    }
+
+    @Test
+    public void testUsernamePrefixIsEscaped() {
+        assertEquals("a!%b!_c!!%", UserListService.toLikePrefix("a%b_c!"));
+        assertNull(UserListService.toLikePrefix(""));
+    }
+}
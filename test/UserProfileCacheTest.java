@@ -0,0 +1,66 @@
+package ee.coop.core.service;
+
+import ee.coop.core.dto.UserData;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class UserProfileCacheTest {
+
+    private Function<Long, UserData> loader(AtomicInteger loads) {
+        return id -> {
+            loads.incrementAndGet();
+            UserData userData = new UserData();
+            userData.setId(id);
+            return userData;
+        };
+    }
+
+    @Test
+    public void testProfileIsLoadedOnceUntilInvalidated() {
+        UserProfileCache cache = new UserProfileCache(10, 300);
+        AtomicInteger loads = new AtomicInteger();
+
+        UserData first = cache.get(1L, loader(loads));
+        assertSame(first, cache.get(1L, loader(loads)));
+        assertEquals(1, loads.get());
+
+        cache.invalidate(1L);
+
+        assertNotSame(first, cache.get(1L, loader(loads)));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedProfileIsEvicted() {
+        UserProfileCache cache = new UserProfileCache(2, 300);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, loader(loads));
+        cache.get(2L, loader(loads));
+        cache.get(1L, loader(loads));
+        cache.get(3L, loader(loads));
+        cache.get(1L, loader(loads));
+        cache.get(2L, loader(loads));
+
+        assertEquals(2, cache.size());
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testExpiredProfileIsReloaded() {
+        UserProfileCache cache = new UserProfileCache(10, 0);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, loader(loads));
+        cache.get(1L, loader(loads));
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -4,6 +4,9 @@ import com.google.zxing.WriterException;
 import com.itextpdf.text.DocumentException;
 import ee.coop.core.domain.User;
 import ee.coop.core.dto.UserData;
+import ee.coop.core.dto.UserListRow;
+import ee.coop.core.service.UserListService;
+import ee.coop.core.service.UserProfileCache;
 import ee.coop.core.service.UserService;
 import ee.coop.delivery.domain.Cabinet;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,11 +26,22 @@ public class UsersController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private UserListService userListService;
+
     private static final String qrCodeFilename = "qrcode.pdf";
 
     @GetMapping
-    public List<User> getUsers() {
-        return userService.getAllUsers();
+    public List<UserListRow> getUsers(@RequestParam(value = "afterId", required = false) Long afterId,
+                                      @RequestParam(value = "role", required = false) String role,
+                                      @RequestParam(value = "enabled", required = false) Boolean enabled,
+                                      @RequestParam(value = "language", required = false) String language,
+                                      @RequestParam(value = "username", required = false) String usernamePrefix,
+                                      @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return userListService.getUsers(afterId, role, enabled, language, usernamePrefix, limit);
     }
 
     @GetMapping("{id}")
@@ -37,7 +51,7 @@ public class UsersController {
 
     @GetMapping("{id}/profile")
     public UserData getUserDataById(@PathVariable Long id) {
-        return userService.getUserDataByid(id);
+        return userProfileCache.get(id, userService::getUserDataByid);
     }
 
     @PostMapping
@@ -48,11 +62,13 @@ public class UsersController {
     @PostMapping("{id}/cabinet")
     public void saveUserCabinet(@PathVariable Long id, @RequestBody Cabinet cabinet) throws Exception {
         userService.saveUserCabinet(cabinet.getId(), id);
+        userProfileCache.invalidate(id);
     }
 
     @DeleteMapping("{id}/{cabinetId}")
     public void deleteUserCabinet(@PathVariable Long id, @PathVariable Long cabinetId) throws Exception {
         userService.deleteUserCabinet(cabinetId, id);
+        userProfileCache.invalidate(id);
     }
 
     @PutMapping("/edit/{id}")
@@ -60,11 +76,13 @@ public class UsersController {
             @PathVariable("id") Long id,
             @RequestBody User editedUser) throws Exception {
         userService.editUser(id, editedUser);
+        userProfileCache.invalidate(id);
     }
 
     @DeleteMapping("delete/{id}")
     public ResponseEntity delete(@PathVariable("id") Long id) {
         userService.deleteUser(id);
+        userProfileCache.invalidate(id);
         return new ResponseEntity(HttpStatus.OK);
     }
 }
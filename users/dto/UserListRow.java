@@ -0,0 +1,74 @@
+package ee.coop.core.dto;
+
+/**
+ * One row of the admin user list, without the person and credentials of the user
+ */
+public class UserListRow {
+
+    private Long id;
+    private String username;
+    private Boolean enabled;
+    private String language;
+    private String role;
+    private String extId;
+
+    public UserListRow() {
+    }
+
+    public UserListRow(Long id, String username, Boolean enabled, String language, String role, String extId) {
+        this.id = id;
+        this.username = username;
+        this.enabled = enabled;
+        this.language = language;
+        this.role = role;
+        this.extId = extId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getExtId() {
+        return extId;
+    }
+
+    public void setExtId(String extId) {
+        this.extId = extId;
+    }
+}
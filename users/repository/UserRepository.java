@@ -1,7 +1,11 @@
 package ee.coop.core.repository;
 
 import ee.coop.core.domain.User;
+import ee.coop.core.dto.UserListRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -12,4 +16,17 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findAllByRole(String role);
 
     User findByUsername(String adminName);
+
+    // keyset page over the primary key, null filters match everything
+    @Query("select new ee.coop.core.dto.UserListRow(u.id, u.username, u.enabled, u.language, u.role, u.extId) " +
+            "from User u " +
+            "where u.id > :afterId " +
+            "and (:role is null or u.role = :role) " +
+            "and (:enabled is null or u.enabled = :enabled) " +
+            "and (:language is null or u.language = :language) " +
+            "and (:usernamePrefix is null or u.username like :usernamePrefix escape '!') " +
+            "order by u.id")
+    List<UserListRow> findRowsAfter(@Param("afterId") Long afterId, @Param("role") String role,
+                                    @Param("enabled") Boolean enabled, @Param("language") String language,
+                                    @Param("usernamePrefix") String usernamePrefix, Pageable pageable);
 }
@@ -0,0 +1,115 @@
+package ee.coop.core.service;
+
+import ee.coop.core.domain.Classifier;
+import ee.coop.core.repository.ClassifierRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preloaded, read-only view of the classifier table. Classifiers only change through
+ * admin edits, which must call {@link #invalidate()} afterwards.
+ */
+@Service
+public class ClassifierRegistry {
+
+    private final ClassifierRepository classifierRepository;
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+
+    private static final Logger log = LoggerFactory.getLogger(ClassifierRegistry.class);
+
+    public ClassifierRegistry(ClassifierRepository classifierRepository) {
+        this.classifierRepository = classifierRepository;
+    }
+
+    @PostConstruct
+    public void preload() {
+        List<Classifier> classifiers = classifierRepository.findAll();
+        snapshot = new Snapshot(classifiers);
+        version.incrementAndGet();
+        log.info(String.format("Loaded %d classifiers", classifiers.size()));
+    }
+
+    public void invalidate() {
+        preload();
+    }
+
+    public Classifier findFirstByKey(String key) {
+        if (key == null) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        if (current == null) {
+            misses.incrementAndGet();
+            return classifierRepository.findFirstByKey(key);
+        }
+        Classifier classifier = current.byKey.get(key);
+        if (classifier == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return classifier;
+    }
+
+    public List<Classifier> findAllByParentId(Long parentId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            misses.incrementAndGet();
+            return classifierRepository.findAllByParentId(parentId);
+        }
+        List<Classifier> children = current.byParentId.get(parentId);
+        if (children == null) {
+            misses.incrementAndGet();
+            return Collections.emptyList();
+        }
+        hits.incrementAndGet();
+        return children;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Incremented on every reload, for HTTP caching of classifier based responses
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    private static class Snapshot {
+        private final Map<String, Classifier> byKey;
+        private final Map<Long, List<Classifier>> byParentId;
+
+        private Snapshot(List<Classifier> classifiers) {
+            Map<String, Classifier> keys = new HashMap<>();
+            Map<Long, List<Classifier>> children = new HashMap<>();
+            for (Classifier classifier : classifiers) {
+                if (classifier.getKey() != null) {
+                    keys.putIfAbsent(classifier.getKey(), classifier);
+                }
+                children.computeIfAbsent(classifier.getParentId(), parentId -> new ArrayList<>()).add(classifier);
+            }
+            children.replaceAll((parentId, list) -> Collections.unmodifiableList(list));
+            this.byKey = Collections.unmodifiableMap(keys);
+            this.byParentId = Collections.unmodifiableMap(children);
+        }
+    }
+}
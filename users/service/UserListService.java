@@ -0,0 +1,52 @@
+package ee.coop.core.service;
+
+import ee.coop.core.dto.UserListRow;
+import ee.coop.core.repository.UserRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Pages of the admin user list. Pages are keyed by the last user id of the previous page, so every
+ * page costs the same whatever the number of users.
+ */
+@Service
+public class UserListService {
+
+    static final int MAX_PAGE_SIZE = 500;
+    private static final char LIKE_ESCAPE = '!';
+
+    private final UserRepository userRepository;
+
+    public UserListService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * @param afterId id of the last user of the previous page, null for the first page
+     */
+    public List<UserListRow> getUsers(Long afterId, String role, Boolean enabled, String language, String usernamePrefix, int limit) {
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        return userRepository.findRowsAfter(afterId != null ? afterId : 0L, emptyToNull(role), enabled, emptyToNull(language),
+                toLikePrefix(usernamePrefix), page);
+    }
+
+    static String toLikePrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return null;
+        }
+        StringBuilder pattern = new StringBuilder(prefix.length() + 1);
+        for (char c : prefix.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,102 @@
+package ee.coop.core.service;
+
+import ee.coop.core.dto.UserData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Assembled user profiles by user id, bounded in size with least recently used eviction and
+ * expired after a TTL. Every change to a user or its cabinets must call {@link #invalidate(Long)}
+ * once committed.
+ */
+@Service
+public class UserProfileCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<Long, Entry> profiles;
+
+    // a profile loaded while an invalidation happened may already be stale and is not cached
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public UserProfileCache(@Value("${core.user-profile.max-size:1000}") int maxSize,
+                            @Value("${core.user-profile.ttl-seconds:300}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.profiles = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > UserProfileCache.this.maxSize;
+            }
+        };
+    }
+
+    public UserData get(Long userId, Function<Long, UserData> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (profiles) {
+            Entry entry = profiles.get(userId);
+            if (entry != null && entry.expiresAt > now) {
+                hits.incrementAndGet();
+                return entry.profile;
+            }
+        }
+        misses.incrementAndGet();
+        long invalidationsBefore = invalidations.get();
+        // loaded outside the lock, concurrent misses of one user may both load
+        UserData profile = loader.apply(userId);
+        if (profile == null) {
+            return null;
+        }
+        synchronized (profiles) {
+            if (invalidations.get() == invalidationsBefore) {
+                profiles.put(userId, new Entry(profile, now + ttlMillis));
+            }
+        }
+        return profile;
+    }
+
+    public void invalidate(Long userId) {
+        synchronized (profiles) {
+            invalidations.incrementAndGet();
+            profiles.remove(userId);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (profiles) {
+            invalidations.incrementAndGet();
+            profiles.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (profiles) {
+            return profiles.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final UserData profile;
+        private final long expiresAt;
+
+        private Entry(UserData profile, long expiresAt) {
+            this.profile = profile;
+            this.expiresAt = expiresAt;
+        }
+    }
+}